@@ -0,0 +1,84 @@
+package com.chess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a synthetic private-chat log through the CHESS: parser, comparing the
+ * single-pass parser with the old startsWith + split decoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatParseBenchmark {
+    private static final int LOG_SIZE = 100_000;
+
+    private static final String[] CHATTER = {
+            "hey", "gz on the 99!", "you coming to raids?", "brb", "lol",
+            "selling 2k sharks, pm me", "CH?", "Chest loot was trash", "omw to the GE", "ty"
+    };
+
+    private final String[] chatLog = new String[LOG_SIZE];
+    private final ChessMessage message = new ChessMessage();
+
+    @Setup
+    public void setUp() {
+        // About one message in ten is chess traffic, the rest is ordinary chat
+        Random random = new Random(42);
+        for (int i = 0; i < LOG_SIZE; i++) {
+            int roll = random.nextInt(100);
+            if (roll < 8) {
+                chatLog[i] = "CHESS:1a2b3c4d:" + BoardSnapshot.squareKey(random.nextInt(64))
+                        + ":" + BoardSnapshot.squareKey(random.nextInt(64));
+            } else if (roll < 9) {
+                chatLog[i] = "CHESS:1a2b3c4d:JOIN";
+            } else if (roll < 10) {
+                chatLog[i] = "CHESS:1a2b3c4d:RE";
+            } else {
+                chatLog[i] = CHATTER[random.nextInt(CHATTER.length)];
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOG_SIZE)
+    public int singlePassParser() {
+        int moves = 0;
+        for (String line : chatLog) {
+            if (ChessMessageParser.parse(line, message) && message.getType() == ChessMessage.MOVE) {
+                moves += PackedMove.to((short) message.getRecordValue(0));
+            }
+        }
+        return moves;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOG_SIZE)
+    public int splitParser() {
+        int moves = 0;
+        for (String line : chatLog) {
+            if (line.startsWith("CHESS:")) {
+                String[] parts = ChessGame.parseMoveMessage(line);
+                if (parts != null && !parts[1].equals("JOIN") && !parts[1].equals("RESIGN")) {
+                    moves += parts[2].length();
+                }
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,142 @@
+package com.chess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the ChessGame hot paths over a few realistic positions.
+ * Run with {@code ./gradlew jmh}; the GC profiler adds allocation rates per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessGameBenchmark {
+    /**
+     * Start position, move line played from it, and the square queried for valid moves
+     */
+    public enum Scenario {
+        // Italian game into kingside castling
+        OPENING("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", "G1",
+                "E2", "E4", "E7", "E5", "G1", "F3", "B8", "C6", "F1", "C4", "G8", "F6", "E1", "G1"),
+
+        // Kiwipete: captures followed by castling on both sides
+        MIDDLEGAME("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1", "F3",
+                "E2", "A6", "B4", "C3", "D2", "C3", "E8", "G8", "E1", "C1"),
+
+        // Both sides promote, then the king takes the new piece
+        PROMOTION("8/2P2k2/8/8/8/8/5Kp1/8 w - - 0 1", "C7",
+                "C7", "C8", "G2", "G1", "F2", "G1"),
+
+        // Rooks and kings only, castling on opposite sides
+        CASTLING("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1", "E1",
+                "E1", "G1", "E8", "C8", "F1", "F7");
+
+        final String fen;
+        final String selectedSquare;
+        final String[] line;
+
+        Scenario(String fen, String selectedSquare, String... line) {
+            this.fen = fen;
+            this.selectedSquare = selectedSquare;
+            this.line = line;
+        }
+    }
+
+    @Param({"OPENING", "MIDDLEGAME", "PROMOTION", "CASTLING"})
+    public Scenario scenario;
+
+    private ChessGame game;
+    private String serialized;
+    private String moveMessage;
+    private int selectedSquareIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Make sure every line is still legal, otherwise we would only measure the rejection path
+        if (playLine() == null) {
+            throw new IllegalStateException("Illegal move line for " + scenario);
+        }
+
+        game = ChessGame.fromFen("bench001", scenario.fen);
+        game.setOpponentName("Opponent");
+        serialized = game.serialize();
+        moveMessage = "CHESS:" + game.getGameId() + ":" + scenario.line[0] + ":" + scenario.line[1];
+        selectedSquareIndex = BoardSnapshot.squareIndex(scenario.selectedSquare);
+    }
+
+    private ChessGame playLine() {
+        ChessGame replay = ChessGame.fromFen("bench001", scenario.fen);
+        String[] line = scenario.line;
+
+        for (int i = 0; i < line.length; i += 2) {
+            if (!replay.makeMove(line[i], line[i + 1])) {
+                return null;
+            }
+        }
+
+        return replay;
+    }
+
+    @Benchmark
+    public ChessGame makeMoveLine() {
+        return playLine();
+    }
+
+    /**
+     * Plays the line and takes all of it back; the difference from makeMoveLine is the cost of the takebacks
+     */
+    @Benchmark
+    public ChessGame takeBackLine() {
+        ChessGame replay = playLine();
+        replay.takeBack(0);
+        return replay;
+    }
+
+    @Benchmark
+    public List<String> getValidMoves() {
+        return game.getValidMoves(scenario.selectedSquare);
+    }
+
+    @Benchmark
+    public long getValidMoveMask() {
+        return game.getValidMoveMask(selectedSquareIndex);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return game.serialize();
+    }
+
+    @Benchmark
+    public ChessGame fromSerialized() {
+        return ChessGame.fromSerialized(serialized);
+    }
+
+    @Benchmark
+    public String[] parseMoveMessage() {
+        return ChessGame.parseMoveMessage(moveMessage);
+    }
+
+    @Benchmark
+    public void updateBoardStateFromChessLib(Blackhole blackhole) {
+        game.updateBoardStateFromChessLib();
+        blackhole.consume(game.getSnapshot());
+    }
+}
@@ -0,0 +1,248 @@
+package com.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft: counts the leaf nodes of the move tree to a fixed depth and compares them with
+ * the published counts for the standard test positions. Every move goes through
+ * {@link ChessGame#makeMove(String, String, int)} and is taken back with
+ * {@link ChessGame#undoMove()} on the same game, so the square conversion, promotion
+ * matching, unmake stack and snapshot history are checked along with the move generator.
+ *
+ * <p>Run with {@code ./gradlew perft}; {@code -PperftDepth=<n>} sets the maximum depth and
+ * {@code -PperftParallel} splits the root moves over a fork-join pool. Exits with status 1
+ * if any count is wrong, so it can gate a build.</p>
+ */
+public final class Perft {
+    /**
+     * Test positions and their known node counts, indexed by depth - 1
+     */
+    enum Position {
+        START("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+                20, 400, 8902, 197281, 4865609, 119060324),
+
+        // Castling through and out of check, pins, en passant and promotions
+        KIWIPETE("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                48, 2039, 97862, 4085603, 193690690),
+
+        // Sparse endgame with discovered checks and en passant pins along the rank
+        ENDGAME("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                14, 191, 2812, 43238, 674624, 11030083),
+
+        // Promotions, including underpromotions that capture
+        PROMOTIONS("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                6, 264, 9467, 422333, 15833292),
+
+        // Promotion with check while castling rights remain on one side
+        CASTLING("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                44, 1486, 62379, 2103487, 89941194),
+
+        // Symmetrical middlegame
+        MIDDLEGAME("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                46, 2079, 89890, 3894594, 164075551);
+
+        private final String fen;
+        private final long[] nodes;
+
+        Position(String fen, long... nodes) {
+            this.fen = fen;
+            this.nodes = nodes;
+        }
+    }
+
+    private static final int DEFAULT_DEPTH = 3;
+    private static final String GAME_ID = "perft";
+
+    private Perft() {
+    }
+
+    public static void main(String[] args) {
+        int maxDepth = DEFAULT_DEPTH;
+        boolean parallel = false;
+        for (String arg : args) {
+            if (arg.equals("--parallel")) {
+                parallel = true;
+            } else {
+                maxDepth = Integer.parseInt(arg);
+            }
+        }
+
+        ForkJoinPool pool = parallel ? new ForkJoinPool() : null;
+        int failures = 0;
+        long totalNodes = 0;
+        long totalNanos = 0;
+
+        try {
+            for (Position position : Position.values()) {
+                int depthLimit = Math.min(maxDepth, position.nodes.length);
+                for (int depth = 1; depth <= depthLimit; depth++) {
+                    ChessGame game = ChessGame.fromFen(GAME_ID, position.fen);
+
+                    long start = System.nanoTime();
+                    long nodes = pool != null ? pool.invoke(new RootTask(position.fen, depth)) : perft(game, depth);
+                    long elapsed = System.nanoTime() - start;
+
+                    long expected = position.nodes[depth - 1];
+                    boolean correct = nodes == expected;
+                    if (!correct) {
+                        failures++;
+                    }
+                    totalNodes += nodes;
+                    totalNanos += elapsed;
+
+                    System.out.printf("%-10s depth %d: %,14d nodes %-22s %8.3f s %,12d nodes/s%n",
+                            position, depth, nodes, correct ? "OK" : "FAIL (expected " + expected + ")",
+                            elapsed / 1e9, nodesPerSecond(nodes, elapsed));
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        System.out.printf("Total: %,d nodes in %.3f s, %,d nodes/s, %d failed%n",
+                totalNodes, totalNanos / 1e9, nodesPerSecond(totalNodes, totalNanos), failures);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Number of leaf nodes of the move tree below the game's position. Each move is played
+     * and taken back on the game itself, which is left as it was found.
+     */
+    static long perft(ChessGame game, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+
+        // The snapshot is immutable, so it still describes this position while the moves are tried
+        BoardSnapshot snapshot = game.getSnapshot();
+        boolean whiteTurn = game.isWhiteTurn();
+        long nodes = 0;
+
+        for (int square = 0; square < 64; square++) {
+            byte piece = snapshot.getPiece(square);
+            if (piece == BoardSnapshot.EMPTY || BoardSnapshot.isWhitePiece(piece) != whiteTurn) {
+                continue;
+            }
+
+            long destinations = game.getValidMoveMask(square);
+            while (destinations != 0) {
+                int to = Long.numberOfTrailingZeros(destinations);
+                destinations &= destinations - 1;
+
+                if (game.isPromotionMove(square, to)) {
+                    for (int promotion = PackedMove.KNIGHT; promotion <= PackedMove.QUEEN; promotion++) {
+                        nodes += perftMove(game, square, to, promotion, depth);
+                    }
+                } else {
+                    nodes += perftMove(game, square, to, PackedMove.NO_PROMOTION, depth);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static long perftMove(ChessGame game, int from, int to, int promotion, int depth) {
+        play(game, from, to, promotion);
+        long nodes = perft(game, depth - 1);
+        if (!game.undoMove()) {
+            throw new IllegalStateException("Couldn't take back " + PackedMove.toString(PackedMove.of(from, to, promotion)));
+        }
+        return nodes;
+    }
+
+    /**
+     * Plays a move through the string form chat sends
+     */
+    private static void play(ChessGame game, int from, int to, int promotion) {
+        String fromKey = BoardSnapshot.squareKey(from);
+        String toKey = BoardSnapshot.squareKey(to);
+        if (!game.makeMove(fromKey, toKey, promotion)) {
+            throw new IllegalStateException("Legal move " + fromKey + toKey + " rejected in " + game.getFen());
+        }
+    }
+
+    /**
+     * The position's legal moves as PackedMoves, each promotion piece separately
+     */
+    private static List<Short> legalMoves(ChessGame game) {
+        BoardSnapshot snapshot = game.getSnapshot();
+        List<Short> moves = new ArrayList<>();
+
+        for (int square = 0; square < 64; square++) {
+            byte piece = snapshot.getPiece(square);
+            if (piece == BoardSnapshot.EMPTY || BoardSnapshot.isWhitePiece(piece) != game.isWhiteTurn()) {
+                continue;
+            }
+
+            long destinations = game.getValidMoveMask(square);
+            while (destinations != 0) {
+                int to = Long.numberOfTrailingZeros(destinations);
+                destinations &= destinations - 1;
+
+                if (game.isPromotionMove(square, to)) {
+                    for (int promotion = PackedMove.KNIGHT; promotion <= PackedMove.QUEEN; promotion++) {
+                        moves.add(PackedMove.of(square, to, promotion));
+                    }
+                } else {
+                    moves.add(PackedMove.of(square, to, PackedMove.NO_PROMOTION));
+                }
+            }
+        }
+        return moves;
+    }
+
+    private static long nodesPerSecond(long nodes, long nanos) {
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Counts each root move's subtree as a separate fork-join task. A game isn't thread-safe,
+     * so every subtree plays its root move on its own game and makes and unmakes from there.
+     */
+    private static final class RootTask extends RecursiveTask<Long> {
+        private final String fen;
+        private final short move;
+        private final int depth;
+
+        RootTask(String fen, int depth) {
+            this(fen, PackedMove.NONE, depth);
+        }
+
+        private RootTask(String fen, short move, int depth) {
+            this.fen = fen;
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            ChessGame game = ChessGame.fromFen(GAME_ID, fen);
+            if (move != PackedMove.NONE) {
+                play(game, PackedMove.from(move), PackedMove.to(move), PackedMove.promotion(move));
+                return perft(game, depth);
+            }
+            if (depth <= 1) {
+                return perft(game, depth);
+            }
+
+            List<RootTask> subtrees = new ArrayList<>();
+            for (short rootMove : legalMoves(game)) {
+                subtrees.add(new RootTask(fen, rootMove, depth - 1));
+            }
+            invokeAll(subtrees);
+
+            long nodes = 0;
+            for (RootTask subtree : subtrees) {
+                nodes += subtree.join();
+            }
+            return nodes;
+        }
+    }
+}
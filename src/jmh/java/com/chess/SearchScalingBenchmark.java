@@ -0,0 +1,76 @@
+package com.chess;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nodes per second of the Lazy SMP search from 1 to N threads. Each operation is a
+ * fixed-time search of the Kiwipete middlegame; the "nodes" counter in the results
+ * is the total search rate over all threads.
+ * Run with {@code ./gradlew jmh -PjmhInclude=SearchScalingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchScalingBenchmark {
+    private static final String FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    // Long enough for the helpers to get going, short enough for many samples
+    private static final long SEARCH_MILLIS = 250;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    private SearchEngine engine;
+
+    /**
+     * Reported by JMH as a rate, i.e. nodes per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new SearchEngine(threads, 64);
+    }
+
+    @Setup(Level.Iteration)
+    public void clearTable() {
+        // Every iteration starts cold, so later ones don't just replay stored results
+        engine.getTranspositionTable().clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.shutDown();
+    }
+
+    @Benchmark
+    public SearchInfo search(Counters counters) {
+        SearchInfo info = engine.analyze(FEN, SearchLimits.ofTime(SEARCH_MILLIS));
+        if (info != null) {
+            counters.nodes += info.getNodes();
+        }
+        return info;
+    }
+}
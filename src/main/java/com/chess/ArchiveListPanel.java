@@ -0,0 +1,148 @@
+package com.chess;
+
+import net.runelite.client.ui.ColorScheme;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Lists finished games from the archive, newest first. The list model reads index
+ * entries on demand, so only the rows scrolled into view are ever fetched.
+ */
+public class ArchiveListPanel extends JPanel {
+    private final ChessPlugin plugin;
+    private final ArchiveListModel model = new ArchiveListModel();
+    private final JList<GameArchive.Entry> list;
+
+    public ArchiveListPanel(ChessPlugin plugin) {
+        this.plugin = plugin;
+
+        setLayout(new BorderLayout());
+        setBackground(ColorScheme.DARK_GRAY_COLOR);
+        setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(ColorScheme.LIGHT_GRAY_COLOR),
+                "Past Games"
+        ));
+
+        list = new JList<>(model);
+        list.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        list.setForeground(Color.WHITE);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        // A fixed cell height keeps JList from measuring every row up front
+        list.setFixedCellHeight(20);
+        list.setVisibleRowCount(6);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                GameArchive.Entry entry = (GameArchive.Entry) value;
+                setText(dateFormat.format(new Date(entry.getFinishedAt())) + "  " + describeResult(entry)
+                        + " vs " + entry.getOpponentName());
+                return this;
+            }
+        });
+
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && list.getSelectedValue() != null) {
+                    showGame(list.getSelectedValue());
+                }
+            }
+        });
+
+        add(new JScrollPane(list), BorderLayout.CENTER);
+    }
+
+    /**
+     * Picks up games archived since the list was last shown
+     */
+    public void refresh() {
+        model.refresh();
+        setVisible(model.getSize() > 0);
+    }
+
+    private static String describeResult(GameArchive.Entry entry) {
+        if (entry.isWon()) {
+            return "Won";
+        }
+        if (entry.isLost()) {
+            return "Lost";
+        }
+        return entry.getResult() == GameArchive.RESULT_DRAW ? "Draw" : "Left";
+    }
+
+    /**
+     * Reads the game off the EDT, as it means file I/O and decoding, and shows it once it is loaded
+     */
+    private void showGame(GameArchive.Entry entry) {
+        plugin.getPersistenceWriter().readArchived(entry.getIndex(),
+                record -> SwingUtilities.invokeLater(() -> showRecord(entry, record)));
+    }
+
+    private void showRecord(GameArchive.Entry entry, GameArchive.Record record) {
+        if (record == null) {
+            JOptionPane.showMessageDialog(this, "Could not read this game.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        StringBuilder moves = new StringBuilder();
+        short[] history = record.getMoves();
+        for (int ply = 0; ply < history.length; ply++) {
+            if (ply % 2 == 0) {
+                moves.append(ply / 2 + 1).append(". ");
+            }
+            moves.append(history[ply] == PackedMove.NONE ? "?" : PackedMove.toString(history[ply])).append(' ');
+        }
+
+        JTextArea movesArea = new JTextArea(moves.toString().trim(), 8, 20);
+        movesArea.setLineWrap(true);
+        movesArea.setWrapStyleWord(true);
+        movesArea.setEditable(false);
+
+        JPanel content = new JPanel(new BorderLayout(0, 5));
+        content.add(new JLabel("Game " + record.getGameId() + " vs " + record.getOpponentName()
+                + " (" + describeResult(entry) + ", played as " + (record.isPlayingAsWhite() ? "White" : "Black") + ")"),
+                BorderLayout.NORTH);
+        content.add(new JScrollPane(movesArea), BorderLayout.CENTER);
+
+        JOptionPane.showMessageDialog(this, content, "Past Game", JOptionPane.PLAIN_MESSAGE);
+    }
+
+    /**
+     * Newest-first view over the archive index; rows are read when JList asks for them
+     */
+    private class ArchiveListModel extends AbstractListModel<GameArchive.Entry> {
+        private int size = 0;
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public GameArchive.Entry getElementAt(int index) {
+            return plugin.getGameArchive().getEntry(size - 1 - index);
+        }
+
+        private void refresh() {
+            int oldSize = size;
+            size = plugin.getGameArchive().size();
+
+            // New games go at the top, pushing the existing rows down
+            if (size > oldSize) {
+                fireIntervalAdded(this, 0, size - oldSize - 1);
+            } else if (size < oldSize) {
+                fireIntervalRemoved(this, 0, oldSize - size - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.chess;
+
+import lombok.Getter;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable copy of a game position: one piece code per square plus side to move,
+ * last move and result, with the legal destinations from each square and the squares of
+ * queued premoves. Squares are indexed 0-63 from A1 to H8, rank by rank, matching the
+ * ordinal of the chess library's Square enum. This is what the UI reads; the game itself
+ * is only touched on its own thread.
+ */
+public final class BoardSnapshot {
+    public static final byte EMPTY = 0;
+    public static final byte WHITE_PAWN = 1;
+    public static final byte WHITE_KNIGHT = 2;
+    public static final byte WHITE_BISHOP = 3;
+    public static final byte WHITE_ROOK = 4;
+    public static final byte WHITE_QUEEN = 5;
+    public static final byte WHITE_KING = 6;
+    public static final byte BLACK_PAWN = 7;
+    public static final byte BLACK_KNIGHT = 8;
+    public static final byte BLACK_BISHOP = 9;
+    public static final byte BLACK_ROOK = 10;
+    public static final byte BLACK_QUEEN = 11;
+    public static final byte BLACK_KING = 12;
+
+    // Piece values in our "wP"/"bK" format, indexed by piece code
+    private static final String[] PIECE_VALUES = {
+            null,
+            "wP", "wN", "wB", "wR", "wQ", "wK",
+            "bP", "bN", "bB", "bR", "bQ", "bK"
+    };
+
+    // Square keys in our "A1"/"E4" format, indexed by square
+    private static final String[] SQUARE_KEYS = new String[64];
+
+    static {
+        for (int square = 0; square < 64; square++) {
+            SQUARE_KEYS[square] = "" + (char) ('A' + (square & 7)) + (char) ('1' + (square >> 3));
+        }
+    }
+
+    private final byte[] pieces;
+
+    @Getter
+    private final boolean whiteTurn;
+
+    @Getter
+    private final String lastMove;
+
+    // "White", "Black" or "Draw" once the game is over, null while in progress
+    @Getter
+    private final String result;
+
+    @Getter
+    private final int plyCount;
+
+    // Legal destinations and promoting destinations from each square, shared with the game that made them
+    private final long[] destinationMasks;
+    private final long[] promotionMasks;
+
+    // From and to squares of the queued premoves, one bit per square
+    @Getter
+    private final long premoveSquares;
+
+    /**
+     * Creates a snapshot that takes ownership of the given 64-entry arrays, which must not change afterwards
+     */
+    BoardSnapshot(byte[] pieces, boolean whiteTurn, String lastMove, String result, int plyCount,
+                  long[] destinationMasks, long[] promotionMasks, long premoveSquares) {
+        this.pieces = pieces;
+        this.whiteTurn = whiteTurn;
+        this.lastMove = lastMove;
+        this.result = result;
+        this.plyCount = plyCount;
+        this.destinationMasks = destinationMasks;
+        this.promotionMasks = promotionMasks;
+        this.premoveSquares = premoveSquares;
+    }
+
+    /**
+     * Copy of this snapshot with other premove squares; the position arrays are shared
+     */
+    BoardSnapshot withPremoveSquares(long premoveSquares) {
+        return new BoardSnapshot(pieces, whiteTurn, lastMove, result, plyCount,
+                destinationMasks, promotionMasks, premoveSquares);
+    }
+
+    public boolean isGameOver() {
+        return result != null;
+    }
+
+    /**
+     * Whether the other snapshot shows this same position and only differs in premoves
+     */
+    public boolean hasSamePosition(BoardSnapshot other) {
+        return pieces == other.pieces;
+    }
+
+    /**
+     * Gets the piece code on the given square
+     */
+    public byte getPiece(int square) {
+        return pieces[square];
+    }
+
+    /**
+     * Legal destinations of the piece on the given square, one bit per square
+     */
+    public long getValidMoveMask(int square) {
+        return destinationMasks[square];
+    }
+
+    /**
+     * Whether the legal move between two squares promotes a pawn, so a promotion piece must be chosen
+     */
+    public boolean isPromotionMove(int fromSquare, int toSquare) {
+        return (promotionMasks[fromSquare] & (1L << toSquare)) != 0;
+    }
+
+    /**
+     * Gets the piece on the given square in our piece value format, or null if empty
+     */
+    public String getPieceValue(int square) {
+        return PIECE_VALUES[pieces[square]];
+    }
+
+    /**
+     * Converts a piece code to our piece value format (e.g., "wP", "bK")
+     */
+    public static String pieceValue(byte piece) {
+        return PIECE_VALUES[piece];
+    }
+
+    public static boolean isWhitePiece(byte piece) {
+        return piece >= WHITE_PAWN && piece <= WHITE_KING;
+    }
+
+    /**
+     * Converts a square index to our position key format (e.g., "A1", "E4")
+     */
+    public static String squareKey(int square) {
+        return SQUARE_KEYS[square];
+    }
+
+    /**
+     * Converts a position key such as "E4" to a square index, or -1 if it is not a square
+     */
+    public static int squareIndex(CharSequence key) {
+        if (key == null || key.length() != 2) {
+            return -1;
+        }
+        return squareIndex(key, 0);
+    }
+
+    /**
+     * Converts the two chars of a position key at the given offset, e.g. within "E2E4", or returns -1
+     */
+    public static int squareIndex(CharSequence text, int offset) {
+        if (offset + 2 > text.length()) {
+            return -1;
+        }
+
+        int file = Character.toUpperCase(text.charAt(offset)) - 'A';
+        int rank = text.charAt(offset + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            return -1;
+        }
+
+        return rank * 8 + file;
+    }
+
+    /**
+     * Read-only map view of the occupied squares, keyed by position ("E4") with piece values ("wP")
+     */
+    public Map<String, String> asMap() {
+        return new AbstractMap<String, String>() {
+            @Override
+            public String get(Object key) {
+                int square = key instanceof String ? squareIndex((String) key) : -1;
+                return square < 0 ? null : getPieceValue(square);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<Entry<String, String>>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new OccupiedSquareIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        int count = 0;
+                        for (byte piece : pieces) {
+                            if (piece != EMPTY) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                };
+            }
+        };
+    }
+
+    private class OccupiedSquareIterator implements Iterator<Map.Entry<String, String>> {
+        private int next = advance(0);
+
+        private int advance(int from) {
+            while (from < 64 && pieces[from] == EMPTY) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < 64;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (next >= 64) {
+                throw new NoSuchElementException();
+            }
+
+            int square = next;
+            next = advance(square + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(SQUARE_KEYS[square], PIECE_VALUES[pieces[square]]);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.chess;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.function.IntConsumer;
+
+/**
+ * Paints the whole board in one component from a BoardSnapshot. Squares are indexed
+ * 0-63 from A1 to H8 and drawn with white at the bottom. Only the squares whose
+ * piece or overlay changed are repainted. Only left clicks select squares.
+ */
+public class ChessBoardCanvas extends JComponent {
+    // Board colors
+    private static final Color LIGHT_SQUARE_COLOR = new Color(240, 217, 181);
+    private static final Color DARK_SQUARE_COLOR = new Color(181, 136, 99);
+    private static final Color SELECTED_SQUARE_COLOR = new Color(106, 168, 79);
+    private static final Color SELECTED_BORDER_COLOR = Color.YELLOW;
+    private static final Color MOVE_HIGHLIGHT_COLOR = new Color(170, 162, 58);
+    private static final Color LAST_MOVE_HIGHLIGHT_COLOR = new Color(205, 210, 106, 150);
+    private static final Color PREMOVE_HIGHLIGHT_COLOR = new Color(110, 140, 200, 170);
+
+    private static final BasicStroke SELECTED_BORDER_STROKE = new BasicStroke(2);
+
+    private BoardSnapshot snapshot;
+    private int selectedSquare = -1;
+    private long highlightedSquares = 0L;
+    private int lastMoveFrom = -1;
+    private int lastMoveTo = -1;
+    private long premoveSquares = 0L;
+
+    // Checkerboard pre-rendered at the current square size
+    private BufferedImage background;
+    private int backgroundSquareSize;
+
+    public ChessBoardCanvas(IntConsumer squareClickHandler) {
+        setPreferredSize(new Dimension(400, 400));
+        setOpaque(true);
+
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    return;
+                }
+
+                int square = squareAt(e.getX(), e.getY());
+                if (square >= 0) {
+                    squareClickHandler.accept(square);
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows a new position, repainting only the squares whose piece or last-move overlay changed
+     */
+    public void setPosition(BoardSnapshot newSnapshot, int newLastMoveFrom, int newLastMoveTo) {
+        BoardSnapshot oldSnapshot = snapshot;
+        snapshot = newSnapshot;
+
+        if (oldSnapshot == null || newSnapshot == null) {
+            repaint();
+        } else {
+            for (int square = 0; square < 64; square++) {
+                if (oldSnapshot.getPiece(square) != newSnapshot.getPiece(square)) {
+                    repaintSquare(square);
+                }
+            }
+        }
+
+        if (newLastMoveFrom != lastMoveFrom || newLastMoveTo != lastMoveTo) {
+            repaintSquare(lastMoveFrom);
+            repaintSquare(lastMoveTo);
+            lastMoveFrom = newLastMoveFrom;
+            lastMoveTo = newLastMoveTo;
+            repaintSquare(lastMoveFrom);
+            repaintSquare(lastMoveTo);
+        }
+    }
+
+    /**
+     * Marks the selected square and the squares it can move to (one bit per square)
+     */
+    public void setSelection(int square, long destinations) {
+        long changed = highlightedSquares ^ destinations;
+        if (square != selectedSquare) {
+            repaintSquare(selectedSquare);
+            repaintSquare(square);
+        }
+
+        selectedSquare = square;
+        highlightedSquares = destinations;
+
+        while (changed != 0) {
+            repaintSquare(Long.numberOfTrailingZeros(changed));
+            changed &= changed - 1;
+        }
+    }
+
+    public void clearSelection() {
+        setSelection(-1, 0L);
+    }
+
+    /**
+     * Marks the origin and destination squares of the queued premoves (one bit per square)
+     */
+    public void setPremoveSquares(long squares) {
+        long changed = premoveSquares ^ squares;
+        premoveSquares = squares;
+
+        while (changed != 0) {
+            repaintSquare(Long.numberOfTrailingZeros(changed));
+            changed &= changed - 1;
+        }
+    }
+
+    private int getSquareSize() {
+        return Math.max(1, Math.min(getWidth(), getHeight()) / 8);
+    }
+
+    private int squareAt(int x, int y) {
+        int size = getSquareSize();
+        int col = x / size;
+        int row = y / size;
+        if (x < 0 || y < 0 || col > 7 || row > 7) {
+            return -1;
+        }
+
+        return (7 - row) * 8 + col;
+    }
+
+    private void repaintSquare(int square) {
+        if (square < 0) {
+            return;
+        }
+
+        int size = getSquareSize();
+        repaint((square & 7) * size, (7 - (square >> 3)) * size, size, size);
+    }
+
+    private BufferedImage getBackground(int size) {
+        if (background == null || backgroundSquareSize != size) {
+            background = new BufferedImage(size * 8, size * 8, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = background.createGraphics();
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    g.setColor((row + col) % 2 == 0 ? LIGHT_SQUARE_COLOR : DARK_SQUARE_COLOR);
+                    g.fillRect(col * size, row * size, size, size);
+                }
+            }
+            g.dispose();
+            backgroundSquareSize = size;
+        }
+
+        return background;
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Graphics2D g = (Graphics2D) graphics;
+        int size = getSquareSize();
+
+        g.setColor(getParent() != null ? getParent().getBackground() : Color.DARK_GRAY);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.drawImage(getBackground(size), 0, 0, null);
+
+        // Only walk the squares inside the dirty region
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, size * 8, size * 8);
+        }
+
+        int firstCol = Math.max(0, clip.x / size);
+        int lastCol = Math.min(7, (clip.x + clip.width - 1) / size);
+        int firstRow = Math.max(0, clip.y / size);
+        int lastRow = Math.min(7, (clip.y + clip.height - 1) / size);
+
+        // Sprites are fetched at the device pixel size so HiDPI displays blit them unscaled
+        double scale = g.getTransform().getScaleX();
+        int pixelSize = Math.max(1, (int) Math.round(size * scale));
+        Image[] sprites = PieceSpriteCache.getInstance().getSprites(pixelSize, g.getDeviceConfiguration());
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                paintSquare(g, sprites, (7 - row) * 8 + col, col * size, row * size, size);
+            }
+        }
+    }
+
+    private void paintSquare(Graphics2D g, Image[] sprites, int square, int x, int y, int size) {
+        if (square == lastMoveFrom || square == lastMoveTo) {
+            g.setColor(LAST_MOVE_HIGHLIGHT_COLOR);
+            g.fillRect(x, y, size, size);
+        }
+
+        if ((premoveSquares & (1L << square)) != 0) {
+            g.setColor(PREMOVE_HIGHLIGHT_COLOR);
+            g.fillRect(x, y, size, size);
+        }
+
+        if (square == selectedSquare) {
+            g.setColor(SELECTED_SQUARE_COLOR);
+            g.fillRect(x, y, size, size);
+        } else if ((highlightedSquares & (1L << square)) != 0) {
+            g.setColor(MOVE_HIGHLIGHT_COLOR);
+            g.fillRect(x, y, size, size);
+        }
+
+        if (snapshot != null) {
+            Image sprite = sprites[snapshot.getPiece(square)];
+            if (sprite != null) {
+                g.drawImage(sprite, x, y, size, size, null);
+            }
+        }
+
+        if (square == selectedSquare) {
+            g.setColor(SELECTED_BORDER_COLOR);
+            g.setStroke(SELECTED_BORDER_STROKE);
+            g.drawRect(x + 1, y + 1, size - 2, size - 2);
+        }
+    }
+}
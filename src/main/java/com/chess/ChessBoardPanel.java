@@ -2,35 +2,29 @@ package com.chess;
 
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.client.ui.ColorScheme;
-import net.runelite.client.util.ImageUtil;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 @Slf4j
 public class ChessBoardPanel extends JPanel {
+    // Viewed ply while following the game rather than looking back through it
+    private static final int LIVE = -1;
+
     private final ChessPlugin plugin;
 
-    private JPanel boardPanel;
-    private JButton[][] squares = new JButton[8][8];
-    private Point selectedSquare = null;
+    private ChessBoardCanvas boardCanvas;
+    private int selectedSquare = -1;
 
-    // Chess piece images
-    private final Map<String, ImageIcon> pieceIcons = new java.util.HashMap<>();
+    // Earlier ply being looked at, or LIVE; the board goes back to the game when a square is clicked
+    private int viewedPly = LIVE;
+    private JLabel historyLabel;
 
-    // Board colors
-    private final Color lightSquareColor = new Color(240, 217, 181);
-    private final Color darkSquareColor = new Color(181, 136, 99);
-    private final Color selectedSquareColor = new Color(106, 168, 79);
-    private final Color moveHighlightColor = new Color(170, 162, 58);
-    private final Color lastMoveHighlightColor = new Color(205, 210, 106, 150);
+    // Game whose board is shown, so a selection doesn't carry over when switching games
+    private ChessGame displayedGame;
 
     public ChessBoardPanel(ChessPlugin plugin) {
         this.plugin = plugin;
@@ -39,126 +33,24 @@ public class ChessBoardPanel extends JPanel {
         setBorder(new EmptyBorder(10, 10, 10, 10));
         setBackground(ColorScheme.DARK_GRAY_COLOR);
 
-        initializePieceIcons();
         createChessBoard();
-    }
-
-    private void initializePieceIcons() {
-        // Map our internal piece codes to file names
-        Map<String, String> pieceFileNames = new HashMap<>();
-        pieceFileNames.put("wP", "white_pawn.png");
-        pieceFileNames.put("wR", "white_rook.png");
-        pieceFileNames.put("wN", "white_knight.png");
-        pieceFileNames.put("wB", "white_bishop.png");
-        pieceFileNames.put("wQ", "white_queen.png");
-        pieceFileNames.put("wK", "white_king.png");
-        pieceFileNames.put("bP", "black_pawn.png");
-        pieceFileNames.put("bR", "black_rook.png");
-        pieceFileNames.put("bN", "black_knight.png");
-        pieceFileNames.put("bB", "black_bishop.png");
-        pieceFileNames.put("bQ", "black_queen.png");
-        pieceFileNames.put("bK", "black_king.png");
-
-        // Load each piece image
-        for (Map.Entry<String, String> entry : pieceFileNames.entrySet()) {
-            String pieceCode = entry.getKey();
-            String fileName = entry.getValue();
-
-            try {
-                // Load image from resources
-                BufferedImage image = ImageUtil.loadImageResource(
-                        ChessBoardPanel.class, "/com/chess/pieces/" + fileName);
-
-                // Resize to fit our squares if necessary
-                if (image.getWidth() > 40 || image.getHeight() > 40) {
-                    image = resizeImage(image, 40, 40);
-                }
-
-                pieceIcons.put(pieceCode, new ImageIcon(image));
-            } catch (Exception e) {
-                log.error("Failed to load chess piece image: " + fileName, e);
-                // Fall back to Unicode character
-                pieceIcons.put(pieceCode, createPieceIcon(pieceCode));
-            }
-        }
-    }
-
-    // Helper method to resize images
-    private BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = resizedImage.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(originalImage, 0, 0, targetWidth, targetHeight, null);
-        g.dispose();
-        return resizedImage;
-    }
-
-    private ImageIcon createPieceIcon(String piece) {
-        // Create an icon with a Unicode chess piece
-        JLabel label = new JLabel(getPieceSymbol(piece));
-        label.setFont(new Font("Arial", Font.BOLD, 24));
-        label.setHorizontalAlignment(SwingConstants.CENTER);
-        label.setForeground(piece.charAt(0) == 'w' ? Color.WHITE : Color.BLACK);
-
-        // Create an image of the rendered label
-        BufferedImage image = new BufferedImage(
-                40, 40, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g2 = image.createGraphics();
-        g2.setRenderingHint(
-                RenderingHints.KEY_TEXT_ANTIALIASING,
-                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g2.setColor(new Color(0, 0, 0, 0)); // Transparent background
-        g2.fillRect(0, 0, 40, 40);
-        label.paint(g2);
-        g2.dispose();
-
-        return new ImageIcon(image);
-    }
-
-    private String getPieceSymbol(String piece) {
-        char type = piece.charAt(1);
-        switch (type) {
-            case 'P': return "♟";
-            case 'R': return "♜";
-            case 'N': return "♞";
-            case 'B': return "♝";
-            case 'Q': return "♛";
-            case 'K': return "♚";
-            default: return "?";
-        }
+        updateBoard();
     }
 
     private void createChessBoard() {
-        boardPanel = new JPanel(new GridLayout(8, 8));
-        boardPanel.setPreferredSize(new Dimension(400, 400));
-
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                JButton square = new JButton();
-                square.setFocusPainted(false);
-                square.setBorderPainted(false);
-                square.setMargin(new Insets(0, 0, 0, 0));
-
-                // Set square color
-                Color squareColor = (row + col) % 2 == 0 ? lightSquareColor : darkSquareColor;
-                square.setBackground(squareColor);
-
-                final int finalRow = row;
-                final int finalCol = col;
-
-                square.addMouseListener(new MouseAdapter() {
-                    @Override
-                    public void mousePressed(MouseEvent e) {
-                        handleSquareClick(finalRow, finalCol);
-                    }
-                });
-
-                squares[row][col] = square;
-                boardPanel.add(square);
+        boardCanvas = new ChessBoardCanvas(this::handleSquareClick);
+
+        // Right-click cancels a selection and any queued premoves
+        boardCanvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isRightMouseButton(e)) {
+                    clearPremoves();
+                }
             }
-        }
+        });
 
-        add(boardPanel, BorderLayout.CENTER);
+        add(boardCanvas, BorderLayout.CENTER);
 
         // Add row and column labels
         JPanel northLabels = new JPanel(new GridLayout(1, 8));
@@ -179,45 +71,108 @@ public class ChessBoardPanel extends JPanel {
 
         add(northLabels, BorderLayout.NORTH);
         add(westLabels, BorderLayout.WEST);
+        add(createHistoryNavigator(), BorderLayout.SOUTH);
+    }
 
-        // Initialize the board with pieces
-        updateBoard();
+    /**
+     * Buttons to step through the game's earlier positions, which are shown from the snapshots the game kept
+     */
+    private JPanel createHistoryNavigator() {
+        JPanel buttons = new JPanel(new GridLayout(1, 4, 5, 0));
+        buttons.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        buttons.add(createHistoryButton("<<", () -> showPly(0)));
+        buttons.add(createHistoryButton("<", () -> stepHistory(-1)));
+        buttons.add(createHistoryButton(">", () -> stepHistory(1)));
+        buttons.add(createHistoryButton(">>", () -> showPly(Integer.MAX_VALUE)));
+
+        // Changes with every step, so it mustn't lay out the whole panel again
+        historyLabel = ChessPanel.createInfoLabel(Color.LIGHT_GRAY);
+
+        JPanel navigator = new JPanel(new BorderLayout(0, 5));
+        navigator.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        navigator.setBorder(new EmptyBorder(5, 0, 0, 0));
+        navigator.add(buttons, BorderLayout.CENTER);
+        navigator.add(historyLabel, BorderLayout.SOUTH);
+        return navigator;
+    }
+
+    private static JButton createHistoryButton(String text, Runnable action) {
+        JButton button = new JButton(text);
+        button.setFocusPainted(false);
+        button.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        button.setForeground(Color.WHITE);
+        button.addActionListener(e -> action.run());
+        return button;
+    }
+
+    private void stepHistory(int plies) {
+        ChessGame currentGame = plugin.getCurrentGame();
+        if (currentGame != null) {
+            int fromPly = viewedPly == LIVE ? currentGame.getSnapshot().getPlyCount() : viewedPly;
+            showPly(fromPly + plies);
+        }
     }
 
-    private void handleSquareClick(int row, int col) {
+    /**
+     * Shows the position after the given ply, clamped to the plies the game has snapshots for;
+     * the current ply or later goes back to following the game
+     */
+    private void showPly(int ply) {
         ChessGame currentGame = plugin.getCurrentGame();
-        if (currentGame == null || currentGame.isGameOver()) {
+        if (currentGame == null) {
             return;
         }
 
-        // Check if it's this player's turn
-        if (!currentGame.isPlayerTurn()) {
-            JOptionPane.showMessageDialog(
-                    this,
-                    "It's not your turn!",
-                    "Wait",
-                    JOptionPane.INFORMATION_MESSAGE
-            );
+        int livePly = currentGame.getSnapshot().getPlyCount();
+        if (ply >= livePly) {
+            viewedPly = LIVE;
+        } else {
+            // Plies from before a reload may have no snapshot; stop at the first one that does
+            ply = Math.max(ply, 0);
+            while (ply < livePly && currentGame.getSnapshot(ply) == null) {
+                ply++;
+            }
+            viewedPly = ply < livePly ? ply : LIVE;
+        }
+
+        selectedSquare = -1;
+        boardCanvas.clearSelection();
+        updateBoard();
+    }
+
+    private void handleSquareClick(int square) {
+        ChessGame currentGame = plugin.getCurrentGame();
+        if (currentGame == null) {
             return;
         }
 
-        String position = getPositionFromCoords(row, col);
+        // A click while looking back through the game returns to the current position
+        if (viewedPly != LIVE) {
+            showPly(Integer.MAX_VALUE);
+            return;
+        }
 
-        if (selectedSquare == null) {
-            // Select a piece - first click
-            String piece = currentGame.getPieceAt(position);
-            if (piece != null && isPieceOwnedByCurrentPlayer(piece, currentGame)) {
-                selectedSquare = new Point(row, col);
+        // Everything is read from the published snapshot; the game itself changes on its own thread
+        BoardSnapshot snapshot = currentGame.getSnapshot();
+        if (snapshot.isGameOver()) {
+            return;
+        }
 
-                // Highlight the selected square
-                squares[row][col].setBackground(selectedSquareColor);
+        // During the opponent's turn, moves are queued to be played as soon as they move
+        if (snapshot.isWhiteTurn() != currentGame.isPlayingAsWhite()) {
+            handlePremoveClick(square, snapshot, currentGame);
+            return;
+        }
 
-                // Highlight valid moves
-                highlightPossibleMoves(position, currentGame);
+        if (selectedSquare < 0) {
+            // Select a piece - first click
+            byte piece = snapshot.getPiece(square);
+            if (isPieceOwnedByCurrentPlayer(piece, currentGame)) {
+                selectedSquare = square;
 
-                // Visual feedback
-                squares[row][col].setBorder(BorderFactory.createLineBorder(Color.YELLOW, 2));
-            } else if (piece != null) {
+                // Highlight the selected square and its valid moves
+                boardCanvas.setSelection(square, getPossibleMoves(square, snapshot));
+            } else if (piece != BoardSnapshot.EMPTY) {
                 // Clicked an opponent's piece
                 JOptionPane.showMessageDialog(
                         this,
@@ -228,123 +183,119 @@ public class ChessBoardPanel extends JPanel {
             }
         } else {
             // Second click - attempt to move
-            String fromPosition = getPositionFromCoords(selectedSquare.x, selectedSquare.y);
-            boolean validMove = false;
+            int fromSquare = selectedSquare;
 
             // Check if this is a valid destination
-            List<String> validMoves = currentGame.getValidMoves(fromPosition);
-            if (validMoves.contains(position)) {
-                validMove = true;
-            }
+            boolean validMove = (snapshot.getValidMoveMask(fromSquare) & (1L << square)) != 0;
 
             // Reset selection highlighting
-            resetBoardColors();
-
-            // Clear selection border
-            squares[selectedSquare.x][selectedSquare.y].setBorder(BorderFactory.createEmptyBorder());
-            selectedSquare = null;
+            boardCanvas.clearSelection();
+            selectedSquare = -1;
 
             // Make the move if valid
             if (validMove) {
-                boolean moveSuccessful = plugin.makeMove(fromPosition, position);
-
-                if (moveSuccessful) {
-                    // The board will be updated by plugin.makeMove()
-                    // Play a sound effect (if available)
-                    // Toolkit.getDefaultToolkit().beep();
-                    log.info("Move successful");
+                int promotion = PackedMove.NO_PROMOTION;
+                if (snapshot.isPromotionMove(fromSquare, square)) {
+                    promotion = choosePromotion();
+                    if (promotion == PackedMove.NO_PROMOTION) {
+                        return;
+                    }
                 }
-            }
-        }
-    }
-
-    private boolean isPieceOwnedByCurrentPlayer(String piece, ChessGame game) {
-        boolean isWhitePiece = piece.charAt(0) == 'w';
-        return (game.isPlayingAsWhite() && isWhitePiece) || (!game.isPlayingAsWhite() && !isWhitePiece);
-    }
-
-    private void highlightPossibleMoves(String position, ChessGame game) {
-        try {
-            // Get valid moves from the chess library
-            List<String> validMoves = game.getValidMoves(position);
 
-            // Highlight valid destination squares
-            for (String movePos : validMoves) {
-                int[] coords = getCoordsFromPosition(movePos);
-                int row = coords[0];
-                int col = coords[1];
-
-                if (row >= 0 && row < 8 && col >= 0 && col < 8) {
-                    squares[row][col].setBackground(moveHighlightColor);
+                // The board is updated once the game's thread has played the move
+                short move = PackedMove.of(fromSquare, square, promotion);
+                if (!plugin.makeMove(move)) {
+                    log.warn("Move {} was not queued", PackedMove.toString(move));
                 }
             }
-        } catch (Exception e) {
-            log.error("Error highlighting possible moves for " + position, e);
-            // Just silently fail without highlighting any moves
         }
     }
 
-    private void resetBoardColors() {
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                Color squareColor = (row + col) % 2 == 0 ? lightSquareColor : darkSquareColor;
-                squares[row][col].setBackground(squareColor);
+    /**
+     * Queues a premove with two clicks, like a normal move. Legality can't be known until the
+     * opponent has moved, so any move of one of the player's pieces is accepted.
+     */
+    private void handlePremoveClick(int square, BoardSnapshot snapshot, ChessGame currentGame) {
+        if (selectedSquare < 0) {
+            if (isPieceOwnedByCurrentPlayer(snapshot.getPiece(square), currentGame)) {
+                selectedSquare = square;
+                boardCanvas.setSelection(square, 0L);
             }
+            return;
         }
 
-        // Highlight last move if configured
-        highlightLastMove();
-    }
-
-    private void highlightLastMove() {
-        ChessGame currentGame = plugin.getCurrentGame();
-        if (currentGame == null || !plugin.getConfig().showLastMove()) {
+        int fromSquare = selectedSquare;
+        boardCanvas.clearSelection();
+        selectedSquare = -1;
+        if (fromSquare == square) {
             return;
         }
 
-        String lastMove = currentGame.getLastMove();
-        if (lastMove != null && lastMove.length() >= 4) {
-            String from = lastMove.substring(0, 2);
-            String to = lastMove.substring(2, 4);
-
-            int[] fromCoords = getCoordsFromPosition(from);
-            int[] toCoords = getCoordsFromPosition(to);
-
-            // Create semi-transparent overlay for both squares
-            Color baseFromColor = (fromCoords[0] + fromCoords[1]) % 2 == 0 ?
-                    lightSquareColor : darkSquareColor;
-            Color baseToColor = (toCoords[0] + toCoords[1]) % 2 == 0 ?
-                    lightSquareColor : darkSquareColor;
-
-            squares[fromCoords[0]][fromCoords[1]].setBackground(
-                    blend(baseFromColor, lastMoveHighlightColor));
-            squares[toCoords[0]][toCoords[1]].setBackground(
-                    blend(baseToColor, lastMoveHighlightColor));
+        int promotion = PackedMove.NO_PROMOTION;
+        if (isPawnReachingLastRank(snapshot, fromSquare, square)) {
+            promotion = choosePromotion();
+            if (promotion == PackedMove.NO_PROMOTION) {
+                return;
+            }
         }
+
+        plugin.queuePremove(PackedMove.of(fromSquare, square, promotion));
     }
 
-    private Color blend(Color base, Color overlay) {
-        float alpha = overlay.getAlpha() / 255f;
-        int r = (int) (base.getRed() * (1 - alpha) + overlay.getRed() * alpha);
-        int g = (int) (base.getGreen() * (1 - alpha) + overlay.getGreen() * alpha);
-        int b = (int) (base.getBlue() * (1 - alpha) + overlay.getBlue() * alpha);
-        return new Color(r, g, b);
+    private static boolean isPawnReachingLastRank(BoardSnapshot snapshot, int fromSquare, int toSquare) {
+        byte piece = snapshot.getPiece(fromSquare);
+        return (piece == BoardSnapshot.WHITE_PAWN && toSquare >> 3 == 7)
+                || (piece == BoardSnapshot.BLACK_PAWN && toSquare >> 3 == 0);
     }
 
-    private String getPositionFromCoords(int row, int col) {
-        char file = (char)('A' + col);
-        int rank = 8 - row;
-        return file + Integer.toString(rank);
+    private void clearPremoves() {
+        selectedSquare = -1;
+        boardCanvas.clearSelection();
+        plugin.clearPremoves();
     }
 
-    private int[] getCoordsFromPosition(String position) {
-        char file = position.charAt(0);
-        int rank = Integer.parseInt(position.substring(1));
+    /**
+     * Asks which piece to promote to, returning NO_PROMOTION if the dialog was cancelled
+     */
+    private int choosePromotion() {
+        String[] options = {"Queen", "Rook", "Bishop", "Knight"};
+        int choice = JOptionPane.showOptionDialog(
+                this,
+                "Promote pawn to:",
+                "Promotion",
+                JOptionPane.DEFAULT_OPTION,
+                JOptionPane.QUESTION_MESSAGE,
+                null,
+                options,
+                options[0]
+        );
+
+        switch (choice) {
+            case 0:
+                return PackedMove.QUEEN;
+            case 1:
+                return PackedMove.ROOK;
+            case 2:
+                return PackedMove.BISHOP;
+            case 3:
+                return PackedMove.KNIGHT;
+            default:
+                return PackedMove.NO_PROMOTION;
+        }
+    }
 
-        int col = file - 'A';
-        int row = 8 - rank;
+    private boolean isPieceOwnedByCurrentPlayer(byte piece, ChessGame game) {
+        return piece != BoardSnapshot.EMPTY && BoardSnapshot.isWhitePiece(piece) == game.isPlayingAsWhite();
+    }
 
-        return new int[] {row, col};
+    /**
+     * Gets the valid destinations of the piece on the given square as a bitmask of squares
+     */
+    private long getPossibleMoves(int square, BoardSnapshot snapshot) {
+        if (!plugin.getConfig().highlightMoves()) {
+            return 0L;
+        }
+        return snapshot.getValidMoveMask(square);
     }
 
     public void updateBoard() {
@@ -353,33 +304,59 @@ public class ChessBoardPanel extends JPanel {
             return;
         }
 
-        Map<String, String> boardState = currentGame.getBoardState();
+        long start = Metrics.start();
+        ChessEvents.UpdateBoard event = new ChessEvents.UpdateBoard();
+        event.begin();
 
-        // Clear all squares
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                squares[row][col].setIcon(null);
+        if (currentGame != displayedGame) {
+            displayedGame = currentGame;
+            viewedPly = LIVE;
+            selectedSquare = -1;
+            boardCanvas.clearSelection();
+        }
+
+        // Read the published snapshot once so the whole board comes from one position
+        BoardSnapshot liveSnapshot = currentGame.getSnapshot();
+        BoardSnapshot snapshot = liveSnapshot;
+
+        // An earlier ply is one lookup in the game's kept snapshots; a takeback past it returns to the game
+        if (viewedPly != LIVE) {
+            BoardSnapshot past = viewedPly < liveSnapshot.getPlyCount() ? currentGame.getSnapshot(viewedPly) : null;
+            if (past != null) {
+                snapshot = past;
+            } else {
+                viewedPly = LIVE;
             }
         }
+        historyLabel.setText(viewedPly == LIVE ? " " : "Ply " + viewedPly + " of " + liveSnapshot.getPlyCount());
 
-        // Reset square colors
-        resetBoardColors();
+        // Highlight last move if configured
+        int lastMoveFrom = -1;
+        int lastMoveTo = -1;
+        String lastMove = snapshot.getLastMove();
+        if (plugin.getConfig().showLastMove() && lastMove != null && lastMove.length() >= 4) {
+            lastMoveFrom = BoardSnapshot.squareIndex(lastMove, 0);
+            lastMoveTo = BoardSnapshot.squareIndex(lastMove, 2);
+        }
 
-        // Place pieces according to the board state
-        for (Map.Entry<String, String> entry : boardState.entrySet()) {
-            String position = entry.getKey();
-            String piece = entry.getValue();
+        boardCanvas.setPosition(snapshot, lastMoveFrom, lastMoveTo);
+        boardCanvas.setPremoveSquares(viewedPly == LIVE ? snapshot.getPremoveSquares() : 0L);
+        Metrics.BOARD_UPDATE.recordSince(start);
+        event.commitFor(currentGame);
+    }
 
-            int[] coords = getCoordsFromPosition(position);
-            int row = coords[0];
-            int col = coords[1];
+    /**
+     * Redraws only the premove squares, for when the position itself hasn't changed
+     */
+    public void updateHighlights() {
+        ChessGame currentGame = plugin.getCurrentGame();
+        if (currentGame == null || currentGame != displayedGame) {
+            updateBoard();
+            return;
+        }
 
-            if (row >= 0 && row < 8 && col >= 0 && col < 8) {
-                ImageIcon pieceIcon = pieceIcons.get(piece);
-                if (pieceIcon != null) {
-                    squares[row][col].setIcon(pieceIcon);
-                }
-            }
+        if (viewedPly == LIVE) {
+            boardCanvas.setPremoveSquares(currentGame.getSnapshot().getPremoveSquares());
         }
     }
 }
\ No newline at end of file
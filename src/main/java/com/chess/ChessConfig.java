@@ -3,10 +3,16 @@ package com.chess;
 import net.runelite.client.config.Config;
 import net.runelite.client.config.ConfigGroup;
 import net.runelite.client.config.ConfigItem;
+import net.runelite.client.config.Range;
 
-@ConfigGroup("chessgame")
+@ConfigGroup(ChessConfig.GROUP)
 public interface ChessConfig extends Config
 {
+	String GROUP = "chessgame";
+
+	// Per-game data is stored under this prefix followed by the game ID
+	String GAME_KEY_PREFIX = "game_";
+
 	@ConfigItem(
 			keyName = "savedGameData",
 			name = "Saved Game Data",
@@ -26,6 +32,25 @@ public interface ChessConfig extends Config
 	)
 	void setSavedGameData(String data);
 
+	@ConfigItem(
+			keyName = "gameIds",
+			name = "Game IDs",
+			description = "Comma-separated IDs of the games in progress",
+			hidden = true
+	)
+	default String gameIds()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = "gameIds",
+			name = "Game IDs",
+			description = "Comma-separated IDs of the games in progress",
+			hidden = true
+	)
+	void setGameIds(String ids);
+
 	@ConfigItem(
 			keyName = "opponentName",
 			name = "Opponent Name",
@@ -48,7 +73,7 @@ public interface ChessConfig extends Config
 	@ConfigItem(
 			keyName = "currentGameId",
 			name = "Current Game ID",
-			description = "ID of the current chess game",
+			description = "ID of the game shown in the panel",
 			hidden = true
 	)
 	default String currentGameId()
@@ -59,7 +84,7 @@ public interface ChessConfig extends Config
 	@ConfigItem(
 			keyName = "currentGameId",
 			name = "Current Game ID",
-			description = "ID of the current chess game",
+			description = "ID of the game shown in the panel",
 			hidden = true
 	)
 	void setCurrentGameId(String id);
@@ -115,4 +140,50 @@ public interface ChessConfig extends Config
 	{
 		return true;
 	}
+
+	@Range(min = 1, max = SearchEngine.MAX_THREADS)
+	@ConfigItem(
+			keyName = "engineThreads",
+			name = "Engine Threads",
+			description = "Number of threads used to search for hints",
+			position = 4
+	)
+	default int engineThreads()
+	{
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	}
+
+	@Range(min = 1, max = 1024)
+	@ConfigItem(
+			keyName = "engineHashSize",
+			name = "Engine Hash Size (MB)",
+			description = "Memory for the engine's transposition table, shared by all its threads",
+			position = 5
+	)
+	default int engineHashSize()
+	{
+		return 64;
+	}
+
+	@ConfigItem(
+			keyName = "openingBookPath",
+			name = "Opening Book",
+			description = "Path to a Polyglot (.bin) opening book; book moves are shown instead of searching",
+			position = 6
+	)
+	default String openingBookPath()
+	{
+		return "";
+	}
+
+	@ConfigItem(
+			keyName = "metricsEnabled",
+			name = "Show Metrics",
+			description = "Time moves, rendering, chat and saving, and show the results in a debug section of the panel",
+			position = 7
+	)
+	default boolean metricsEnabled()
+	{
+		return false;
+	}
 }
\ No newline at end of file
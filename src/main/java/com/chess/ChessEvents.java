@@ -0,0 +1,79 @@
+package com.chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events around the plugin's work, so it can be lined up with the
+ * client's own recordings. They are disabled by default; enable them in the recording
+ * settings, e.g. {@code com.chess.MakeMove#enabled=true}. Without a recording that
+ * enables them, begin and commit do nothing and the JIT removes the event allocation.
+ */
+final class ChessEvents {
+    private ChessEvents() {
+    }
+
+    @Category({"RuneLite", "Chess"})
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class GameEvent extends Event {
+        @Label("Game ID")
+        String gameId;
+
+        @Label("Ply")
+        int ply;
+
+        /**
+         * Ends the event and commits it with the game's ID and current ply, if it is being recorded
+         */
+        void commitFor(ChessGame game) {
+            end();
+            if (shouldCommit()) {
+                gameId = game != null ? game.getGameId() : null;
+                ply = game != null ? game.getPlyCount() : -1;
+                commit();
+            }
+        }
+    }
+
+    @Name("com.chess.MakeMove")
+    @Label("Make Move")
+    @Description("A move applied to a game, from the player or the opponent")
+    static final class MakeMove extends GameEvent {
+    }
+
+    @Name("com.chess.GenerateMoves")
+    @Label("Generate Legal Moves")
+    @Description("Legal move generation for a new position")
+    static final class GenerateMoves extends GameEvent {
+    }
+
+    @Name("com.chess.UpdateBoard")
+    @Label("Update Board")
+    @Description("The board panel taking a new snapshot of the active game")
+    static final class UpdateBoard extends GameEvent {
+    }
+
+    @Name("com.chess.ShowGameBoard")
+    @Label("Show Game Board")
+    @Description("The panel switching to or refreshing the game view")
+    static final class ShowGameBoard extends GameEvent {
+    }
+
+    @Name("com.chess.SaveGame")
+    @Label("Save Game")
+    @Description("Queueing a full snapshot of a game")
+    static final class SaveGame extends GameEvent {
+    }
+
+    @Name("com.chess.ChatDispatch")
+    @Label("Chat Dispatch")
+    @Description("Applying a chess chat message to its game")
+    static final class ChatDispatch extends GameEvent {
+    }
+}
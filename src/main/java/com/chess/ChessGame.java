@@ -10,19 +10,27 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+/**
+ * A game and its chess library board. Not thread-safe: the plugin only changes a game
+ * through its GameExecutor mailbox, and other threads read the published snapshot.
+ */
 @Slf4j
 public class ChessGame {
     @Getter
     private final String gameId;
 
+    // Latest published position, replaced with a single volatile write after every change
     @Getter
-    private final Map<String, String> boardState;
+    private volatile BoardSnapshot snapshot;
 
     @Getter
     private boolean whiteTurn = true;
@@ -34,9 +42,51 @@ public class ChessGame {
     private String winner = null;
 
     @Getter
-    @Setter
     private String lastMove = null;
 
+    // Last move made, including its promotion piece
+    @Getter
+    private short lastPackedMove = PackedMove.NONE;
+
+    // Moves played so far, one PackedMove per ply; NONE where the move is not known
+    private short[] moveHistory = new short[64];
+
+    @Getter
+    private int plyCount = 0;
+
+    // Hash of every position reached, so repetitions are found by lookup and survive a reload
+    private final PositionHistory positionHistory = new PositionHistory();
+
+    // Snapshot published after each ply, so stepping through the game or taking a move back
+    // reuses it instead of rebuilding it. Null for plies before a reload whose moves couldn't be replayed.
+    private BoardSnapshot[] snapshotHistory = new BoardSnapshot[64];
+
+    // Latest plies the chess library board can undo; those before a reload or resync are not on its stack
+    @Getter
+    private int undoablePlies = 0;
+
+    // Open draw offers; they travel over chat and are not persisted
+    @Getter
+    @Setter
+    private boolean drawOfferedByPlayer = false;
+
+    @Getter
+    @Setter
+    private boolean drawOfferedByOpponent = false;
+
+    // Ply each side asked to take moves back to, or NO_TAKEBACK; like draw offers, not persisted
+    @Getter
+    @Setter
+    private int takebackRequestedByPlayer = NO_TAKEBACK;
+
+    @Getter
+    @Setter
+    private int takebackRequestedByOpponent = NO_TAKEBACK;
+
+    // Player moves queued during the opponent's turn, oldest first; not persisted
+    private final short[] premoves = new short[MAX_PREMOVES];
+    private int premoveCount = 0;
+
     @Getter
     @Setter
     private String opponentName = null;
@@ -45,30 +95,72 @@ public class ChessGame {
     @Setter
     private boolean playingAsWhite = true;
 
+    // Longest premove queue; further premoves are refused
+    public static final int MAX_PREMOVES = 8;
+
+    public static final int NO_TAKEBACK = -1;
+
+    // Chess library squares in index order, cached to avoid Square.values() copies
+    private static final Square[] SQUARES = new Square[64];
+
+    // Our piece codes, indexed by chess library Piece ordinal
+    private static final byte[] PIECE_CODES = new byte[Piece.values().length];
+
+    static {
+        for (int i = 0; i < 64; i++) {
+            SQUARES[i] = Square.squareAt(i);
+        }
+
+        PIECE_CODES[Piece.WHITE_PAWN.ordinal()] = BoardSnapshot.WHITE_PAWN;
+        PIECE_CODES[Piece.WHITE_KNIGHT.ordinal()] = BoardSnapshot.WHITE_KNIGHT;
+        PIECE_CODES[Piece.WHITE_BISHOP.ordinal()] = BoardSnapshot.WHITE_BISHOP;
+        PIECE_CODES[Piece.WHITE_ROOK.ordinal()] = BoardSnapshot.WHITE_ROOK;
+        PIECE_CODES[Piece.WHITE_QUEEN.ordinal()] = BoardSnapshot.WHITE_QUEEN;
+        PIECE_CODES[Piece.WHITE_KING.ordinal()] = BoardSnapshot.WHITE_KING;
+        PIECE_CODES[Piece.BLACK_PAWN.ordinal()] = BoardSnapshot.BLACK_PAWN;
+        PIECE_CODES[Piece.BLACK_KNIGHT.ordinal()] = BoardSnapshot.BLACK_KNIGHT;
+        PIECE_CODES[Piece.BLACK_BISHOP.ordinal()] = BoardSnapshot.BLACK_BISHOP;
+        PIECE_CODES[Piece.BLACK_ROOK.ordinal()] = BoardSnapshot.BLACK_ROOK;
+        PIECE_CODES[Piece.BLACK_QUEEN.ordinal()] = BoardSnapshot.BLACK_QUEEN;
+        PIECE_CODES[Piece.BLACK_KING.ordinal()] = BoardSnapshot.BLACK_KING;
+    }
+
     // Chess library board representation
     private Board board;
 
+    // Legal moves for the current position, grouped by from-square.
+    // Generated lazily and dropped whenever the board position changes.
+    private List<Move> legalMoves = null;
+    private final Map<Square, List<Move>> legalMovesByFrom = new EnumMap<>(Square.class);
+
+    // Destination squares of the legal moves from each square, and those of them that promote, one bit per square.
+    // Filled in with the legal move index into new arrays, as published snapshots share them.
+    private long[] destinationMasks = new long[64];
+    private long[] promotionMasks = new long[64];
+
+    // Number of times legal moves have been generated, at most once per position
+    @Getter
+    private long moveGenerationCount = 0;
+
     public ChessGame() {
         this.gameId = generateGameId();
-        this.boardState = new HashMap<>();
         this.board = new Board();
 
         // Initialize the board to starting position
-        board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
 
-        // Populate our board state map from the chess library board
+        // Publish the initial board snapshot
         updateBoardStateFromChessLib();
     }
 
     public ChessGame(String gameId) {
         this.gameId = gameId;
-        this.boardState = new HashMap<>();
         this.board = new Board();
 
         // Initialize the board to starting position
-        board.loadFromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+        loadFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
 
-        // Populate our board state map from the chess library board
+        // Publish the initial board snapshot
         updateBoardStateFromChessLib();
     }
 
@@ -97,13 +189,7 @@ public class ChessGame {
             ChessGame game = new ChessGame(gameId);
 
             // Load the FEN string
-            game.board.loadFromFen(fenString);
-
-            // Update the board state
-            game.updateBoardStateFromChessLib();
-
-            // Check game end conditions
-            game.checkGameEndConditions();
+            game.loadFen(fenString);
 
             // Set opponent name if provided
             if (parts.length > 2) {
@@ -116,10 +202,29 @@ public class ChessGame {
             }
 
             // Set last move if provided
-            if (parts.length > 4) {
+            if (parts.length > 4 && !parts[4].isEmpty()) {
                 game.lastMove = parts[4];
             }
 
+            // Number of plies the snapshot covers; the moves themselves are kept in the journal
+            if (parts.length > 5) {
+                game.plyCount = Integer.parseInt(parts[5]);
+                game.moveHistory = new short[Math.max(64, game.plyCount * 2)];
+            }
+
+            // Position hashes since the start of the game; older saves only know the current position
+            if (parts.length > 6) {
+                game.restorePositionHistory(PositionHistory.decode(parts[6]));
+            } else {
+                game.restorePositionHistory(new long[0]);
+            }
+
+            // Check game end conditions, including repetitions that span the reload
+            game.checkGameEndConditions();
+
+            // Publish the restored board
+            game.updateBoardStateFromChessLib();
+
             return game;
         } catch (Exception e) {
             log.error("Error deserializing game", e);
@@ -127,6 +232,108 @@ public class ChessGame {
         }
     }
 
+    /**
+     * Creates a game starting from an arbitrary FEN position
+     */
+    public static ChessGame fromFen(String gameId, String fen) {
+        ChessGame game = new ChessGame(gameId);
+        game.loadFen(fen);
+        game.checkGameEndConditions();
+        game.updateBoardStateFromChessLib();
+        return game;
+    }
+
+    private void loadFen(String fen) {
+        board.loadFromFen(fen);
+        undoablePlies = 0;
+        invalidateLegalMoves();
+        whiteTurn = board.getSideToMove() == Side.WHITE;
+
+        positionHistory.restore(new long[0]);
+        positionHistory.push(board.getZobristKey());
+    }
+
+    /**
+     * Restores the saved hashes, one per position up to the current ply. Positions
+     * without a saved hash are marked unknown, and the current one is always taken from the board.
+     */
+    private void restorePositionHistory(long[] saved) {
+        long[] hashes = new long[plyCount + 1];
+        System.arraycopy(saved, 0, hashes, 0, Math.min(saved.length, plyCount));
+        hashes[plyCount] = board.getZobristKey();
+        positionHistory.restore(hashes);
+    }
+
+    /**
+     * Zobrist hash of the current position
+     */
+    public long getPositionHash() {
+        return positionHistory.current();
+    }
+
+    /**
+     * Zobrist hash of the position after the given ply, or 0 if it is not known
+     */
+    public long getPositionHash(int ply) {
+        return positionHistory.get(ply);
+    }
+
+    /**
+     * Replaces the position with one sent by the opponent to recover from a desync. The FEN
+     * must hash to the short hash they sent with it, otherwise the game is left untouched.
+     * Moves and hashes before the new ply are kept where known; the rest are marked unknown.
+     */
+    public boolean resync(String fen, int ply, int shortHash) {
+        Board candidate = new Board();
+        try {
+            candidate.loadFromFen(fen);
+        } catch (Exception e) {
+            log.warn("Received an unreadable position {}", fen, e);
+            return false;
+        }
+        if (ChessWireFormat.shortHash(candidate.getZobristKey()) != shortHash) {
+            return false;
+        }
+
+        int keptPlies = Math.min(plyCount, ply);
+        long[] keptHashes = Arrays.copyOf(positionHistory.toArray(), keptPlies);
+
+        BoardSnapshot[] snapshots = new BoardSnapshot[Math.max(64, ply * 2)];
+        System.arraycopy(snapshotHistory, 0, snapshots, 0, keptPlies);
+        snapshotHistory = snapshots;
+
+        board = candidate;
+        undoablePlies = 0;
+        invalidateLegalMoves();
+        whiteTurn = board.getSideToMove() == Side.WHITE;
+
+        short[] history = new short[Math.max(64, ply * 2)];
+        System.arraycopy(moveHistory, 0, history, 0, keptPlies);
+        moveHistory = history;
+        plyCount = ply;
+        restorePositionHistory(keptHashes);
+
+        lastMove = null;
+        lastPackedMove = PackedMove.NONE;
+        premoveCount = 0;
+        drawOfferedByPlayer = false;
+        drawOfferedByOpponent = false;
+        takebackRequestedByPlayer = NO_TAKEBACK;
+        takebackRequestedByOpponent = NO_TAKEBACK;
+        gameOver = false;
+        winner = null;
+        checkGameEndConditions();
+        updateBoardStateFromChessLib();
+        return true;
+    }
+
+    /**
+     * Number of times the current position has occurred, counting positions from before a reload
+     */
+    public int getRepetitionCount() {
+        return positionHistory.occurrences(positionHistory.current());
+    }
+
     /**
      * Serialize the game to a string
      */
@@ -138,7 +345,7 @@ public class ChessGame {
             // Encode to Base64
             String fenBase64 = Base64.getEncoder().encodeToString(fenString.getBytes());
 
-            // Format: gameId|fenBase64|opponentName|playingAsWhite|lastMove
+            // Format: gameId|fenBase64|opponentName|playingAsWhite|lastMove|plyCount|positionHashes
             StringBuilder sb = new StringBuilder();
             sb.append(gameId).append("|");
             sb.append(fenBase64);
@@ -146,10 +353,9 @@ public class ChessGame {
             if (opponentName != null) {
                 sb.append("|").append(opponentName);
                 sb.append("|").append(playingAsWhite);
-
-                if (lastMove != null) {
-                    sb.append("|").append(lastMove);
-                }
+                sb.append("|").append(lastMove != null ? lastMove : "");
+                sb.append("|").append(plyCount);
+                sb.append("|").append(positionHistory.encode());
             }
 
             return sb.toString();
@@ -160,174 +366,536 @@ public class ChessGame {
     }
 
     /**
-     * Updates our board state map from the chess library's internal board representation
+     * The current position in FEN, e.g. to search it on another thread
      */
-    private void updateBoardStateFromChessLib() {
-        boardState.clear();
-
-        for (Square square : Square.values()) {
-            if (square.isLightSquare()) {
-                Piece piece = board.getPiece(square);
+    public String getFen() {
+        return board.getFen();
+    }
 
-                if (piece != Piece.NONE) {
-                    String squareKey = convertChessLibSquareToKey(square);
-                    String pieceValue = convertChessLibPieceToValue(piece);
+    /**
+     * Legal book moves for the current position, highest weight first. Checked against the
+     * position's legal move index, so a book lookup generates no moves of its own.
+     */
+    public List<OpeningBook.BookMove> getBookMoves(OpeningBook book) {
+        List<OpeningBook.BookMove> moves = book.probe(board);
+        if (moves.isEmpty()) {
+            return moves;
+        }
 
-                    boardState.put(squareKey, pieceValue);
-                }
+        List<OpeningBook.BookMove> legal = new ArrayList<>(moves.size());
+        for (OpeningBook.BookMove move : moves) {
+            if (isLegalMove(move.getMove())) {
+                legal.add(move);
             }
         }
+        return legal;
+    }
+
+    /**
+     * Publishes a new board snapshot from the chess library's internal board representation
+     */
+    void updateBoardStateFromChessLib() {
+        byte[] pieces = new byte[64];
+
+        for (int i = 0; i < 64; i++) {
+            pieces[i] = PIECE_CODES[board.getPiece(SQUARES[i]).ordinal()];
+        }
 
         // Update turn
         whiteTurn = board.getSideToMove() == Side.WHITE;
+
+        // The UI reads move destinations from the snapshot, so the position's moves are generated now
+        getLegalMoves();
+
+        BoardSnapshot published = new BoardSnapshot(pieces, whiteTurn, lastMove, gameOver ? winner : null, plyCount,
+                destinationMasks, promotionMasks, getPremoveSquares());
+
+        // Kept for the ply before it is published, so a reader of the snapshot also sees it in the history
+        if (plyCount >= snapshotHistory.length) {
+            snapshotHistory = Arrays.copyOf(snapshotHistory, Math.max(plyCount + 1, snapshotHistory.length * 2));
+        }
+        snapshotHistory[plyCount] = published;
+        snapshot = published;
+    }
+
+    /**
+     * The snapshot published after the given ply, or null if it is unknown. Safe to call from
+     * any thread for plies up to that of the current snapshot.
+     */
+    public BoardSnapshot getSnapshot(int ply) {
+        BoardSnapshot[] history = snapshotHistory;
+        return ply >= 0 && ply < history.length ? history[ply] : null;
+    }
+
+    /**
+     * Ends the game with the given winner ("White", "Black" or "Draw"), e.g. on resignation
+     */
+    public void endGame(String winner) {
+        this.gameOver = true;
+        this.winner = winner;
+
+        updateBoardStateFromChessLib();
     }
 
     /**
      * Checks if the game has ended (checkmate, stalemate, etc.)
      */
     public void checkGameEndConditions() {
-        if (board.isMated()) {
+        // Mate and stalemate are read from the legal move index instead of
+        // board.isMated()/isDraw(), which would each generate the moves again.
+        // Repetitions come from our own hash history, which unlike the board's survives a reload.
+        boolean noLegalMoves = getLegalMoves().isEmpty();
+
+        if (noLegalMoves && board.isKingAttacked()) {
             gameOver = true;
             winner = whiteTurn ? "Black" : "White"; // The winner is the opposite of current turn
-        } else if (board.isDraw()) {
+        } else if (noLegalMoves
+                || getRepetitionCount() >= 3
+                || board.isInsufficientMaterial()
+                || board.getHalfMoveCounter() >= 100) {
             gameOver = true;
             winner = "Draw";
         }
     }
 
     /**
-     * Converts a chess library Square to our position key format (e.g., "A1", "E4")
+     * Gets the legal moves for the current position, generating them once per position
      */
-    private String convertChessLibSquareToKey(Square square) {
-        String squareName = square.toString();
-        return squareName.substring(0, 1).toUpperCase() + squareName.substring(1);
+    private List<Move> getLegalMoves() {
+        if (legalMoves == null) {
+            ChessEvents.GenerateMoves event = new ChessEvents.GenerateMoves();
+            event.begin();
+
+            legalMoves = MoveGenerator.generateLegalMoves(board);
+            moveGenerationCount++;
+
+            legalMovesByFrom.clear();
+            destinationMasks = new long[64];
+            promotionMasks = new long[64];
+            for (Move move : legalMoves) {
+                legalMovesByFrom.computeIfAbsent(move.getFrom(), square -> new ArrayList<>()).add(move);
+
+                int from = move.getFrom().ordinal();
+                long destination = 1L << move.getTo().ordinal();
+                destinationMasks[from] |= destination;
+                if (getPromotion(move) != PackedMove.NO_PROMOTION) {
+                    promotionMasks[from] |= destination;
+                }
+            }
+
+            event.commitFor(this);
+        }
+
+        return legalMoves;
     }
 
     /**
-     * Converts a chess library Piece to our piece value format (e.g., "wP", "bK")
+     * Gets the legal moves starting from the given square
      */
-    private String convertChessLibPieceToValue(Piece piece) {
-        char color = piece.getPieceSide() == Side.WHITE ? 'w' : 'b';
-        char type;
-
-        switch (piece.getPieceType()) {
-            case PAWN:
-                type = 'P';
-                break;
-            case KNIGHT:
-                type = 'N';
-                break;
-            case BISHOP:
-                type = 'B';
-                break;
-            case ROOK:
-                type = 'R';
-                break;
-            case QUEEN:
-                type = 'Q';
-                break;
-            case KING:
-                type = 'K';
-                break;
-            default:
-                type = '?';
-        }
-
-        return "" + color + type;
+    private List<Move> getLegalMovesFrom(Square fromSquare) {
+        getLegalMoves();
+        return legalMovesByFrom.getOrDefault(fromSquare, Collections.emptyList());
     }
 
     /**
-     * Converts our position format to chess library Square
+     * Drops the legal move index; must be called whenever the board position changes
      */
-    private Square convertKeyToChessLibSquare(String key) {
-        // Convert "A1" or "C2" to lowercase "a1" or "c2" format
-        String squareName = key.toLowerCase();
-        return Square.valueOf(squareName);
+    private void invalidateLegalMoves() {
+        legalMoves = null;
+        legalMovesByFrom.clear();
     }
 
     /**
      * Gets the piece at the specified position
      */
     public String getPieceAt(String position) {
-        return boardState.get(position);
+        int square = BoardSnapshot.squareIndex(position);
+        return square < 0 ? null : snapshot.getPieceValue(square);
+    }
+
+    /**
+     * Read-only view of the current board, keyed by position ("E4") with piece values ("wP")
+     */
+    public Map<String, String> getBoardState() {
+        return snapshot.asMap();
     }
 
     /**
      * Gets a list of valid destination squares for a piece at the given position
      */
     public List<String> getValidMoves(String position) {
-        Square fromSquare = convertKeyToChessLibSquare(position);
-        List<Move> legalMoves = MoveGenerator.generateLegalMoves(board);
+        int square = BoardSnapshot.squareIndex(position);
+        if (square < 0) {
+            return Collections.emptyList();
+        }
 
-        List<String> validDestinations = new java.util.ArrayList<>();
+        long destinations = getValidMoveMask(square);
+        List<String> validDestinations = new ArrayList<>(Long.bitCount(destinations));
+        while (destinations != 0) {
+            validDestinations.add(BoardSnapshot.squareKey(Long.numberOfTrailingZeros(destinations)));
+            destinations &= destinations - 1;
+        }
+        return validDestinations;
+    }
 
-        for (Move move : legalMoves) {
-            if (move.getFrom() == fromSquare) {
-                String toSquare = convertChessLibSquareToKey(move.getTo());
-                validDestinations.add(toSquare);
-            }
+    /**
+     * Valid destinations of the piece on a square (0-63, A1 to H8), one bit per square, or 0
+     * for a square outside the board. Read from the legal move index, so it never allocates
+     * once the position's moves exist.
+     */
+    public long getValidMoveMask(int square) {
+        if (square < 0 || square >= 64) {
+            return 0;
         }
 
-        return validDestinations;
+        long start = Metrics.start();
+        getLegalMoves();
+        long destinations = destinationMasks[square];
+        Metrics.VALID_MOVES.recordSince(start);
+        return destinations;
     }
 
     /**
      * Attempts to make a move. Returns true if successful, false if the move is invalid.
+     * Pawns reaching the last rank promote to a queen.
      */
     public boolean makeMove(String from, String to) {
+        return makeMove(from, to, PackedMove.NO_PROMOTION);
+    }
+
+    /**
+     * Attempts to make a move, promoting to the given PackedMove piece if it is a promotion
+     */
+    public boolean makeMove(String from, String to, int promotion) {
+        int fromSquare = BoardSnapshot.squareIndex(from);
+        int toSquare = BoardSnapshot.squareIndex(to);
+        if (fromSquare < 0 || toSquare < 0) {
+            return false;
+        }
+
+        return makeMove(PackedMove.of(fromSquare, toSquare, promotion));
+    }
+
+    /**
+     * Attempts to make a move given as a PackedMove. Returns true if successful, false if the move is invalid.
+     */
+    public boolean makeMove(short packedMove) {
+        long start = Metrics.start();
+        ChessEvents.MakeMove event = new ChessEvents.MakeMove();
+        event.begin();
         try {
-            // Convert to chess library format
-            Square fromSquare = convertKeyToChessLibSquare(from);
-            Square toSquare = convertKeyToChessLibSquare(to);
-
-            // Create the move
-            Move move = new Move(fromSquare, toSquare);
-
-            // Check if it's a valid move
-            List<Move> legalMoves = MoveGenerator.generateLegalMoves(board);
-            if (!legalMoves.contains(move)) {
-                // For promotion moves, we might need to specify the promotion piece
-                boolean foundPromotionMove = false;
-
-                for (Move legalMove : legalMoves) {
-                    if (legalMove.getFrom() == fromSquare && legalMove.getTo() == toSquare) {
-                        // Found a matching move with promotion
-                        move = legalMove;
-                        foundPromotionMove = true;
-                        break;
-                    }
-                }
+            // Find the matching legal move, including its promotion piece
+            Move move = findLegalMove(packedMove);
+            if (move == null) {
+                // Not a legal move
+                return false;
+            }
 
-                if (!foundPromotionMove) {
-                    // Not a legal move
-                    return false;
-                }
+            // The side that moves declines any draw offer made to it, and a move ends any takeback request
+            if (isPlayerTurn()) {
+                drawOfferedByOpponent = false;
+            } else {
+                drawOfferedByPlayer = false;
             }
+            takebackRequestedByPlayer = NO_TAKEBACK;
+            takebackRequestedByOpponent = NO_TAKEBACK;
 
             // Make the move
             board.doMove(move);
-
-            // Update our board state
-            updateBoardStateFromChessLib();
+            undoablePlies++;
+            invalidateLegalMoves();
+            whiteTurn = board.getSideToMove() == Side.WHITE;
+            positionHistory.push(board.getZobristKey());
 
             // Set last move
-            lastMove = from + to;
+            lastPackedMove = toPackedMove(move);
+            appendToHistory(lastPackedMove);
+            lastMove = BoardSnapshot.squareKey(move.getFrom().ordinal()) + BoardSnapshot.squareKey(move.getTo().ordinal());
 
             // Check for game end conditions
             checkGameEndConditions();
 
+            // Publish the new board state
+            updateBoardStateFromChessLib();
+
             return true;
         } catch (Exception e) {
             log.error("Error making move", e);
             return false;
+        } finally {
+            Metrics.MAKE_MOVE.recordSince(start);
+            event.commitFor(this);
+        }
+    }
+
+    private void appendToHistory(short move) {
+        if (plyCount == moveHistory.length) {
+            moveHistory = Arrays.copyOf(moveHistory, plyCount * 2);
+        }
+        moveHistory[plyCount++] = move;
+    }
+
+    /**
+     * The move played at the given ply, or PackedMove.NONE if it is not known.
+     * Throws IndexOutOfBoundsException for a ply that hasn't been played.
+     */
+    public short getMove(int ply) {
+        if (ply < 0 || ply >= plyCount) {
+            throw new IndexOutOfBoundsException("Ply " + ply + " of " + plyCount);
+        }
+        return moveHistory[ply];
+    }
+
+    /**
+     * Copy of the moves played so far, one per ply
+     */
+    public short[] getMoveHistory() {
+        return Arrays.copyOf(moveHistory, plyCount);
+    }
+
+    /**
+     * Fills in the moves that led to a restored snapshot, read back from the game's journal.
+     * When all of them are known they are replayed, so the game can step back through them.
+     */
+    void restoreHistory(short[] moves, int count) {
+        System.arraycopy(moves, 0, moveHistory, 0, Math.min(count, plyCount));
+        if (count >= plyCount && undoablePlies < plyCount) {
+            replayHistory();
+        }
+    }
+
+    /**
+     * Replays the move history from the starting position on a new board and takes over its
+     * unmake stack and snapshots. Leaves the game as it is if a move can't be played or the
+     * moves don't lead to the current position.
+     */
+    private void replayHistory() {
+        ChessGame replay = new ChessGame(gameId);
+        for (int ply = 0; ply < plyCount; ply++) {
+            if (moveHistory[ply] == PackedMove.NONE || !replay.makeMove(moveHistory[ply])) {
+                return;
+            }
+        }
+        if (replay.board.getZobristKey() != board.getZobristKey()) {
+            log.debug("Move history of game {} doesn't lead to its saved position", gameId);
+            return;
+        }
+
+        board = replay.board;
+        undoablePlies = plyCount;
+        invalidateLegalMoves();
+        positionHistory.restore(replay.positionHistory.toArray());
+
+        // Earlier snapshots come from the replay; the current one is republished with this game's result
+        if (snapshotHistory.length < replay.snapshotHistory.length) {
+            snapshotHistory = Arrays.copyOf(snapshotHistory, replay.snapshotHistory.length);
+        }
+        System.arraycopy(replay.snapshotHistory, 0, snapshotHistory, 0, plyCount);
+        updateBoardStateFromChessLib();
+    }
+
+    /**
+     * Takes back the last ply with the board's unmake stack and republishes the snapshot kept
+     * for the ply before it, so no position is rebuilt. Clears premoves and open offers.
+     * Returns false if the board can't undo the ply, e.g. it was played before a reload.
+     */
+    public boolean undoMove() {
+        if (undoablePlies == 0) {
+            return false;
         }
+
+        board.undoMove();
+        undoablePlies--;
+        invalidateLegalMoves();
+        whiteTurn = board.getSideToMove() == Side.WHITE;
+        positionHistory.pop();
+        snapshotHistory[plyCount] = null;
+        plyCount--;
+
+        lastPackedMove = plyCount > 0 ? moveHistory[plyCount - 1] : PackedMove.NONE;
+        lastMove = lastPackedMove == PackedMove.NONE ? null
+                : BoardSnapshot.squareKey(PackedMove.from(lastPackedMove)) + BoardSnapshot.squareKey(PackedMove.to(lastPackedMove));
+
+        // The game went on from the earlier position, so it can't have ended there
+        gameOver = false;
+        winner = null;
+        premoveCount = 0;
+        drawOfferedByPlayer = false;
+        drawOfferedByOpponent = false;
+        takebackRequestedByPlayer = NO_TAKEBACK;
+        takebackRequestedByOpponent = NO_TAKEBACK;
+
+        BoardSnapshot cached = snapshotHistory[plyCount];
+        if (cached == null || cached.isGameOver()) {
+            updateBoardStateFromChessLib();
+        } else {
+            snapshot = cached.getPremoveSquares() == 0L ? cached : cached.withPremoveSquares(0L);
+        }
+        return true;
     }
 
     /**
-     * Creates a move message for sending via in-game chat
+     * Takes back moves until the game is at the given ply. Returns false, leaving the game
+     * untouched, if the board can't undo that far.
      */
-    public String createMoveMessage(String from, String to) {
-        return "CHESS:" + gameId + ":" + from + ":" + to;
+    public boolean takeBack(int ply) {
+        if (ply < 0 || ply > plyCount || plyCount - ply > undoablePlies) {
+            return false;
+        }
+
+        while (plyCount > ply) {
+            undoMove();
+        }
+        return true;
+    }
+
+    /**
+     * Queues a move to play as soon as the opponent has moved. It is only checked against
+     * the legal moves when it is played. Returns false if the queue is full.
+     */
+    public boolean queuePremove(short move) {
+        if (premoveCount == MAX_PREMOVES) {
+            return false;
+        }
+        premoves[premoveCount++] = move;
+        publishPremoves();
+        return true;
+    }
+
+    /**
+     * Copy of the queued premoves, oldest first
+     */
+    public short[] getPremoves() {
+        return Arrays.copyOf(premoves, premoveCount);
+    }
+
+    public boolean hasPremoves() {
+        return premoveCount > 0;
+    }
+
+    public void clearPremoves() {
+        premoveCount = 0;
+        publishPremoves();
+    }
+
+    /**
+     * From and to squares of the queued premoves, one bit per square
+     */
+    private long getPremoveSquares() {
+        long squares = 0L;
+        for (int i = 0; i < premoveCount; i++) {
+            squares |= (1L << PackedMove.from(premoves[i])) | (1L << PackedMove.to(premoves[i]));
+        }
+        return squares;
+    }
+
+    private void publishPremoves() {
+        if (snapshot != null) {
+            snapshot = snapshot.withPremoveSquares(getPremoveSquares());
+        }
+    }
+
+    /**
+     * Plays the oldest premove if it is the player's turn and the move is legal in the new
+     * position. An illegal premove clears the whole queue, since the ones after it assumed
+     * it was played. Returns the move played, or PackedMove.NONE if none was.
+     */
+    public short playPremove() {
+        if (gameOver) {
+            premoveCount = 0;
+            publishPremoves();
+        }
+        if (premoveCount == 0 || !isPlayerTurn()) {
+            return PackedMove.NONE;
+        }
+
+        short premove = premoves[0];
+        premoveCount--;
+        System.arraycopy(premoves, 1, premoves, 0, premoveCount);
+
+        if (!makeMove(premove)) {
+            premoveCount = 0;
+            publishPremoves();
+            return PackedMove.NONE;
+        }
+        return lastPackedMove;
+    }
+
+    /**
+     * Whether moving from one position to another promotes a pawn, so a promotion piece must be chosen
+     */
+    public boolean isPromotionMove(String from, String to) {
+        int fromSquare = BoardSnapshot.squareIndex(from);
+        int toSquare = BoardSnapshot.squareIndex(to);
+        return fromSquare >= 0 && toSquare >= 0 && isPromotionMove(fromSquare, toSquare);
+    }
+
+    /**
+     * Whether the legal move between two squares (0-63) promotes a pawn; false for a square outside the board
+     */
+    public boolean isPromotionMove(int fromSquare, int toSquare) {
+        if (fromSquare < 0 || fromSquare >= 64 || toSquare < 0 || toSquare >= 64) {
+            return false;
+        }
+        getLegalMoves();
+        return (promotionMasks[fromSquare] & (1L << toSquare)) != 0;
+    }
+
+    /**
+     * Finds the legal move matching a PackedMove; a promotion without a piece defaults to a queen
+     */
+    private Move findLegalMove(short packedMove) {
+        Square toSquare = SQUARES[PackedMove.to(packedMove)];
+        int promotion = PackedMove.promotion(packedMove);
+
+        for (Move move : getLegalMovesFrom(SQUARES[PackedMove.from(packedMove)])) {
+            if (move.getTo() != toSquare) {
+                continue;
+            }
+
+            int movePromotion = getPromotion(move);
+            if (movePromotion == promotion
+                    || (promotion == PackedMove.NO_PROMOTION && movePromotion == PackedMove.QUEEN)) {
+                return move;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Whether the PackedMove, including its promotion piece, is a legal move in the current position
+     */
+    private boolean isLegalMove(short packedMove) {
+        Move move = findLegalMove(packedMove);
+        return move != null && toPackedMove(move) == packedMove;
+    }
+
+    static short toPackedMove(Move move) {
+        return PackedMove.of(move.getFrom().ordinal(), move.getTo().ordinal(), getPromotion(move));
+    }
+
+    /**
+     * Converts a chess library move's promotion piece to a PackedMove promotion
+     */
+    private static int getPromotion(Move move) {
+        Piece promotion = move.getPromotion();
+        if (promotion == null || promotion == Piece.NONE) {
+            return PackedMove.NO_PROMOTION;
+        }
+
+        switch (promotion.getPieceType()) {
+            case KNIGHT:
+                return PackedMove.KNIGHT;
+            case BISHOP:
+                return PackedMove.BISHOP;
+            case ROOK:
+                return PackedMove.ROOK;
+            case QUEEN:
+                return PackedMove.QUEEN;
+            default:
+                return PackedMove.NO_PROMOTION;
+        }
     }
 
     /**
@@ -0,0 +1,172 @@
+package com.chess;
+
+import lombok.Getter;
+
+/**
+ * A decoded chess chat message: a game ID plus one or more records. Instances are
+ * reused between messages by ChessMessageParser, so the game ID is kept as a range
+ * of the source text instead of a String; {@link #copyFrom} takes a copy to hand to
+ * another thread.
+ */
+public final class ChessMessage {
+    public static final int NONE = 0;
+    public static final int JOIN = 1;
+    public static final int RESIGN = 2;
+    public static final int MOVE = 3;
+    public static final int ACK = 4;
+    public static final int DRAW_OFFER = 5;
+    public static final int CLOCK = 6;
+    public static final int SYNC = 7;
+    public static final int RESYNC = 8;
+    public static final int POSITION = 9;
+    public static final int TAKEBACK = 10;
+
+    // Most records a single chat line may carry
+    public static final int MAX_RECORDS = 8;
+
+    private final int[] recordTypes = new int[MAX_RECORDS];
+    private final int[] recordValues = new int[MAX_RECORDS];
+
+    @Getter
+    private int recordCount = 0;
+
+    // Whether the message used the compact CHX format rather than the old CHESS: one
+    @Getter
+    private boolean compact = false;
+
+    // Source text and the range of the game ID within it
+    private CharSequence source;
+    private int gameIdStart;
+    private int gameIdEnd;
+
+    // Range of a POSITION record's FEN within the source text
+    private int positionStart;
+    private int positionEnd;
+
+    void reset() {
+        recordCount = 0;
+        compact = false;
+        source = null;
+        gameIdStart = 0;
+        gameIdEnd = 0;
+        positionStart = 0;
+        positionEnd = 0;
+    }
+
+    /**
+     * Makes this message a copy of another; the source text is shared, so it must not change
+     */
+    void copyFrom(ChessMessage other) {
+        System.arraycopy(other.recordTypes, 0, recordTypes, 0, other.recordCount);
+        System.arraycopy(other.recordValues, 0, recordValues, 0, other.recordCount);
+        recordCount = other.recordCount;
+        compact = other.compact;
+        source = other.source;
+        gameIdStart = other.gameIdStart;
+        gameIdEnd = other.gameIdEnd;
+        positionStart = other.positionStart;
+        positionEnd = other.positionEnd;
+    }
+
+    void setGameId(CharSequence source, int start, int end, boolean compact) {
+        this.source = source;
+        this.gameIdStart = start;
+        this.gameIdEnd = end;
+        this.compact = compact;
+    }
+
+    boolean addRecord(int type, int value) {
+        if (recordCount == MAX_RECORDS) {
+            return false;
+        }
+
+        recordTypes[recordCount] = type;
+        recordValues[recordCount] = value;
+        recordCount++;
+        return true;
+    }
+
+    void setPosition(int start, int end) {
+        this.positionStart = start;
+        this.positionEnd = end;
+    }
+
+    /**
+     * Type of the given record, one of the constants above
+     */
+    public int getRecordType(int index) {
+        return recordTypes[index];
+    }
+
+    /**
+     * Payload of the given record: a PackedMove for MOVE, a ply for ACK, seconds for CLOCK,
+     * a ply and hash for SYNC, RESYNC and TAKEBACK (see ChessWireFormat), otherwise 0
+     */
+    public int getRecordValue(int index) {
+        return recordValues[index];
+    }
+
+    /**
+     * Index of the first record of the given type, or -1 if there is none
+     */
+    public int findRecord(int type) {
+        for (int i = 0; i < recordCount; i++) {
+            if (recordTypes[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int countRecords(int type) {
+        int count = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (recordTypes[i] == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The FEN carried by a POSITION record, without its move number, or null if there is
+     * none or it doesn't unpack; allocates
+     */
+    public String getPosition() {
+        if (source == null || positionEnd <= positionStart) {
+            return null;
+        }
+        return ChessWireFormat.decodePosition(source, positionStart, positionEnd);
+    }
+
+    /**
+     * Type of the first record, or NONE if the message holds no records
+     */
+    public int getType() {
+        return recordCount == 0 ? NONE : recordTypes[0];
+    }
+
+    /**
+     * Whether the message's game ID equals the given ID, compared without allocating
+     */
+    public boolean isForGame(String gameId) {
+        int length = gameIdEnd - gameIdStart;
+        if (source == null || gameId == null || gameId.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(gameIdStart + i) != gameId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The game ID as a String; allocates, so meant for logging only
+     */
+    public String getGameId() {
+        return source == null ? null : source.subSequence(gameIdStart, gameIdEnd).toString();
+    }
+}
@@ -0,0 +1,225 @@
+package com.chess;
+
+/**
+ * Single-pass parser for the chess chat protocols. The compact format is described
+ * in ChessWireFormat; the old format is still accepted:
+ * <pre>
+ * CHESS:&lt;gameId&gt;:JOIN
+ * CHESS:&lt;gameId&gt;:RESIGN
+ * CHESS:&lt;gameId&gt;:&lt;from&gt;:&lt;to&gt;    e.g. CHESS:1a2b3c4d:E2:E4
+ * </pre>
+ * Works directly on the CharSequence and fills a reusable ChessMessage, so
+ * parsing allocates nothing. Ordinary chat is rejected after the first two chars.
+ */
+public final class ChessMessageParser {
+    public static final String PREFIX = "CHESS:";
+
+    private ChessMessageParser() {
+    }
+
+    /**
+     * Parses a chat message into the given record. Returns false, leaving the record
+     * reset, if the text is not a valid chess message.
+     */
+    public static boolean parse(CharSequence text, ChessMessage out) {
+        out.reset();
+        if (text == null) {
+            return false;
+        }
+
+        int length = text.length();
+        if (length < 5 || text.charAt(0) != 'C' || text.charAt(1) != 'H') {
+            return false;
+        }
+
+        boolean parsed = text.charAt(2) == 'X' ? parseCompact(text, out) : parseLegacy(text, out);
+        if (!parsed) {
+            out.reset();
+        }
+        return parsed;
+    }
+
+    private static boolean parseCompact(CharSequence text, ChessMessage out) {
+        int length = text.length();
+        if (text.charAt(3) != ChessWireFormat.VERSION || text.charAt(4) != ':') {
+            return false;
+        }
+
+        int gameIdStart = ChessWireFormat.PREFIX.length() + 2;
+        int pos = findSeparator(text, gameIdStart);
+        if (pos == gameIdStart || pos >= length - 1) {
+            return false;
+        }
+
+        out.setGameId(text, gameIdStart, pos, true);
+        pos++;
+
+        // Records until the end of the line, each a tag plus a fixed-width payload
+        while (pos < length) {
+            char tag = text.charAt(pos++);
+            int type;
+            int chars;
+
+            switch (tag) {
+                case ChessWireFormat.TAG_MOVE:
+                    type = ChessMessage.MOVE;
+                    chars = ChessWireFormat.MOVE_CHARS;
+                    break;
+                case ChessWireFormat.TAG_ACK:
+                    type = ChessMessage.ACK;
+                    chars = ChessWireFormat.ACK_CHARS;
+                    break;
+                case ChessWireFormat.TAG_CLOCK:
+                    type = ChessMessage.CLOCK;
+                    chars = ChessWireFormat.CLOCK_CHARS;
+                    break;
+                case ChessWireFormat.TAG_DRAW_OFFER:
+                    type = ChessMessage.DRAW_OFFER;
+                    chars = 0;
+                    break;
+                case ChessWireFormat.TAG_JOIN:
+                    type = ChessMessage.JOIN;
+                    chars = 0;
+                    break;
+                case ChessWireFormat.TAG_RESIGN:
+                    type = ChessMessage.RESIGN;
+                    chars = 0;
+                    break;
+                case ChessWireFormat.TAG_SYNC:
+                    type = ChessMessage.SYNC;
+                    chars = ChessWireFormat.SYNC_CHARS;
+                    break;
+                case ChessWireFormat.TAG_RESYNC:
+                    type = ChessMessage.RESYNC;
+                    chars = ChessWireFormat.SYNC_CHARS;
+                    break;
+                case ChessWireFormat.TAG_TAKEBACK:
+                    type = ChessMessage.TAKEBACK;
+                    chars = ChessWireFormat.SYNC_CHARS;
+                    break;
+                case ChessWireFormat.TAG_POSITION:
+                    // The packed position runs to the end of the line; it is unpacked on demand
+                    if (pos == length || !out.addRecord(ChessMessage.POSITION, 0)) {
+                        return false;
+                    }
+                    out.setPosition(pos, length);
+                    return true;
+                default:
+                    return false;
+            }
+
+            if (pos + chars > length) {
+                return false;
+            }
+
+            int value = chars == 0 ? 0 : ChessWireFormat.decode(text, pos, chars);
+            // Three chars hold 18 bits; a move with the top two set would pass as its low 16 bits
+            if (value < 0 || (type == ChessMessage.MOVE && (value > 0xFFFF || !PackedMove.isValid((short) value)))) {
+                return false;
+            }
+
+            if (!out.addRecord(type, value)) {
+                return false;
+            }
+            pos += chars;
+        }
+
+        return true;
+    }
+
+    private static boolean parseLegacy(CharSequence text, ChessMessage out) {
+        int length = text.length();
+        if (length <= PREFIX.length()) {
+            return false;
+        }
+
+        for (int i = 2; i < PREFIX.length(); i++) {
+            if (text.charAt(i) != PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+
+        // Game ID runs up to the next separator
+        int gameIdStart = PREFIX.length();
+        int pos = findSeparator(text, gameIdStart);
+        if (pos == gameIdStart || pos >= length) {
+            return false;
+        }
+
+        int gameIdEnd = pos++;
+
+        if (isToken(text, pos, "JOIN")) {
+            out.setGameId(text, gameIdStart, gameIdEnd, false);
+            out.addRecord(ChessMessage.JOIN, 0);
+            return true;
+        }
+
+        if (isToken(text, pos, "RESIGN")) {
+            out.setGameId(text, gameIdStart, gameIdEnd, false);
+            out.addRecord(ChessMessage.RESIGN, 0);
+            return true;
+        }
+
+        // Otherwise a move: two squares separated by ':'
+        int from = parseSquare(text, pos);
+        if (from < 0 || pos + 2 >= length || text.charAt(pos + 2) != ':') {
+            return false;
+        }
+
+        pos += 3;
+        int to = parseSquare(text, pos);
+        if (to < 0 || !isFieldEnd(text, pos + 2)) {
+            return false;
+        }
+
+        out.setGameId(text, gameIdStart, gameIdEnd, false);
+        out.addRecord(ChessMessage.MOVE, PackedMove.of(from, to, PackedMove.NO_PROMOTION));
+        return true;
+    }
+
+    private static int findSeparator(CharSequence text, int pos) {
+        int length = text.length();
+        while (pos < length && text.charAt(pos) != ':') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Parses a two-char square such as "E2" at the given position, or returns -1
+     */
+    static int parseSquare(CharSequence text, int pos) {
+        if (pos + 2 > text.length()) {
+            return -1;
+        }
+
+        int file = (text.charAt(pos) | 0x20) - 'a';
+        int rank = text.charAt(pos + 1) - '1';
+        if (file < 0 || file > 7 || rank < 0 || rank > 7) {
+            return -1;
+        }
+
+        return rank * 8 + file;
+    }
+
+    /**
+     * Whether the field starting at pos is exactly the given token
+     */
+    private static boolean isToken(CharSequence text, int pos, String token) {
+        int end = pos + token.length();
+        if (end > text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            if (text.charAt(pos + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return isFieldEnd(text, end);
+    }
+
+    private static boolean isFieldEnd(CharSequence text, int pos) {
+        return pos == text.length() || text.charAt(pos) == ':';
+    }
+}
@@ -11,6 +11,7 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.List;
 
 @Slf4j
 public class ChessPanel extends PluginPanel {
@@ -18,9 +19,35 @@ public class ChessPanel extends PluginPanel {
 
     private JPanel mainPanel;
     private JPanel menuPanel;
+    private JButton continueButton;
+    private ArchiveListPanel archiveListPanel;
+    private MetricsPanel metricsPanel;
     private JPanel gamePanel;
     private ChessBoardPanel chessBoardPanel;
 
+    // Switches between the games in progress; only the active game's board is rendered
+    private JComboBox<ChessGame> gameSwitcher;
+    private boolean updatingGameSwitcher = false;
+
+    // Game view labels, updated in place on every move
+    private JLabel gameIdLabel;
+    private JLabel opponentLabel;
+    private JLabel colorLabel;
+    private JLabel turnLabel;
+    private JLabel statusLabel;
+    private JLabel hintLabel;
+
+    // Running hint search and the position it was started for; cancelled once the position changes
+    private SearchEngine.Search hintSearch;
+    private ChessGame hintGame;
+    private int hintPly;
+
+    // Thinking time per hint
+    private static final long HINT_TIME_MILLIS = 3000;
+
+    // Folds game updates into at most one redraw of the game view per frame
+    private final RenderScheduler renderScheduler = new RenderScheduler(this::render);
+
     @Inject
     public ChessPanel(ChessPlugin plugin) {
         this.plugin = plugin;
@@ -36,13 +63,32 @@ public class ChessPanel extends PluginPanel {
         createMainMenu();
         mainPanel.add(menuPanel, BorderLayout.NORTH);
 
+        archiveListPanel = new ArchiveListPanel(plugin);
+        archiveListPanel.refresh();
+        mainPanel.add(archiveListPanel, BorderLayout.SOUTH);
+
         add(mainPanel, BorderLayout.CENTER);
+
+        // Debug section below both the menu and the game view, shown while metrics are enabled
+        metricsPanel = new MetricsPanel(plugin);
+        add(metricsPanel, BorderLayout.SOUTH);
+        setMetricsVisible(Metrics.isEnabled());
+    }
+
+    public void setMetricsVisible(boolean visible) {
+        metricsPanel.setActive(visible);
+        revalidate();
     }
 
     public void showMainMenu() {
+        cancelHint();
+
         mainPanel.removeAll();
         mainPanel.add(menuPanel, BorderLayout.NORTH);
 
+        // Offer to go back while other games are in progress
+        continueButton.setVisible(plugin.getCurrentGame() != null);
+
         // Add "Not in a game" status panel
         JPanel statusPanel = new JPanel(new GridLayout(2, 1));
         statusPanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
@@ -60,6 +106,9 @@ public class ChessPanel extends PluginPanel {
 
         mainPanel.add(statusPanel, BorderLayout.CENTER);
 
+        archiveListPanel.refresh();
+        mainPanel.add(archiveListPanel, BorderLayout.SOUTH);
+
         mainPanel.revalidate();
         mainPanel.repaint();
     }
@@ -159,28 +208,31 @@ public class ChessPanel extends PluginPanel {
 
         menuPanel.add(joinGamePanel);
 
-        // Load saved game button (only if there's a saved game)
-        if (plugin.getCurrentGame() != null) {
-            JButton loadButton = new JButton("Continue Saved Game");
-            loadButton.setFocusPainted(false);
-            loadButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
-            loadButton.setForeground(Color.WHITE);
-            loadButton.addActionListener(e -> showGameBoard());
-            menuPanel.add(loadButton);
-        }
+        // Continue button (only visible while there are games in progress)
+        continueButton = new JButton("Continue Game");
+        continueButton.setFocusPainted(false);
+        continueButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        continueButton.setForeground(Color.WHITE);
+        continueButton.addActionListener(e -> showGameBoard());
+        continueButton.setVisible(plugin.getCurrentGame() != null);
+        menuPanel.add(continueButton);
     }
 
-    public void showGameBoard() {
-        mainPanel.removeAll();
+    /**
+     * Shows games that were archived since the list was last refreshed
+     */
+    public void refreshArchive() {
+        archiveListPanel.refresh();
+        mainPanel.revalidate();
+    }
 
-        // Create game panel if it doesn't exist
-        if (gamePanel == null) {
-            gamePanel = new JPanel();
-            gamePanel.setLayout(new BorderLayout());
-            gamePanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
-        } else {
-            gamePanel.removeAll();
-        }
+    /**
+     * Builds the game view once; later updates only change label text and board squares
+     */
+    private void createGameView() {
+        gamePanel = new JPanel();
+        gamePanel.setLayout(new BorderLayout());
+        gamePanel.setBackground(ColorScheme.DARK_GRAY_COLOR);
 
         // Add game info at the top
         JPanel gameInfoPanel = new JPanel(new BorderLayout());
@@ -188,7 +240,7 @@ public class ChessPanel extends PluginPanel {
         gameInfoPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
 
         // Game controls
-        JPanel controlsPanel = new JPanel(new GridLayout(1, 2, 5, 0));
+        JPanel controlsPanel = new JPanel(new GridLayout(0, 2, 5, 5));
         controlsPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
 
         JButton leaveButton = new JButton("Leave Game");
@@ -227,52 +279,92 @@ public class ChessPanel extends PluginPanel {
             }
         });
 
+        JButton drawButton = new JButton("Offer Draw");
+        drawButton.setFocusPainted(false);
+        drawButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        drawButton.setForeground(Color.WHITE);
+        drawButton.addActionListener(e -> plugin.offerDraw());
+
+        JButton takebackButton = new JButton("Takeback");
+        takebackButton.setFocusPainted(false);
+        takebackButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        takebackButton.setForeground(Color.WHITE);
+        takebackButton.addActionListener(e -> plugin.requestTakeback());
+
+        JButton hintButton = new JButton("Hint");
+        hintButton.setFocusPainted(false);
+        hintButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        hintButton.setForeground(Color.WHITE);
+        hintButton.addActionListener(e -> requestHint());
+
         controlsPanel.add(leaveButton);
         controlsPanel.add(resignButton);
+        controlsPanel.add(drawButton);
+        controlsPanel.add(takebackButton);
+        controlsPanel.add(hintButton);
+
+        // Game switcher and a way back to the menu to start another game
+        JPanel switcherPanel = new JPanel(new BorderLayout(5, 0));
+        switcherPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        switcherPanel.setBorder(new EmptyBorder(0, 0, 5, 0));
+
+        gameSwitcher = new JComboBox<>();
+        gameSwitcher.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+                if (value instanceof ChessGame) {
+                    ChessGame game = (ChessGame) value;
+                    setText(game.getOpponentName() + " (" + game.getGameId() + ")");
+                }
+                return this;
+            }
+        });
+        gameSwitcher.addActionListener(e -> {
+            ChessGame selected = (ChessGame) gameSwitcher.getSelectedItem();
+            if (!updatingGameSwitcher && selected != null && selected != plugin.getCurrentGame()) {
+                plugin.setActiveGame(selected.getGameId());
+            }
+        });
+
+        JButton newGameButton = new JButton("New");
+        newGameButton.setFocusPainted(false);
+        newGameButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        newGameButton.setForeground(Color.WHITE);
+        newGameButton.addActionListener(e -> showMainMenu());
 
-        gameInfoPanel.add(controlsPanel, BorderLayout.NORTH);
+        switcherPanel.add(gameSwitcher, BorderLayout.CENTER);
+        switcherPanel.add(newGameButton, BorderLayout.EAST);
+
+        JPanel topPanel = new JPanel(new BorderLayout());
+        topPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        topPanel.add(switcherPanel, BorderLayout.NORTH);
+        topPanel.add(controlsPanel, BorderLayout.SOUTH);
+
+        gameInfoPanel.add(topPanel, BorderLayout.NORTH);
 
         // Game info
-        ChessGame currentGame = plugin.getCurrentGame();
-        if (currentGame != null) {
-            JPanel infoPanel = new JPanel(new GridLayout(4, 1));
-            infoPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
-            infoPanel.setBorder(new EmptyBorder(5, 0, 0, 0));
-
-            JLabel gameIdLabel = new JLabel("Game ID: " + currentGame.getGameId());
-            gameIdLabel.setForeground(Color.LIGHT_GRAY);
-            gameIdLabel.setHorizontalAlignment(SwingConstants.CENTER);
-
-            JLabel opponentLabel = new JLabel("Playing against: " + currentGame.getOpponentName());
-            opponentLabel.setForeground(Color.LIGHT_GRAY);
-            opponentLabel.setHorizontalAlignment(SwingConstants.CENTER);
-
-            JLabel colorLabel = new JLabel("Playing as: " +
-                    (currentGame.isPlayingAsWhite() ? "White" : "Black"));
-            colorLabel.setForeground(Color.LIGHT_GRAY);
-            colorLabel.setHorizontalAlignment(SwingConstants.CENTER);
-
-            JLabel turnLabel = new JLabel(currentGame.isWhiteTurn() ? "White to move" : "Black to move");
-            turnLabel.setForeground(Color.LIGHT_GRAY);
-            turnLabel.setHorizontalAlignment(SwingConstants.CENTER);
-
-            infoPanel.add(gameIdLabel);
-            infoPanel.add(opponentLabel);
-            infoPanel.add(colorLabel);
-            infoPanel.add(turnLabel);
-
-            gameInfoPanel.add(infoPanel, BorderLayout.CENTER);
-        }
+        JPanel infoPanel = new JPanel(new GridLayout(4, 1));
+        infoPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        infoPanel.setBorder(new EmptyBorder(5, 0, 0, 0));
+
+        gameIdLabel = createInfoLabel(Color.LIGHT_GRAY);
+        opponentLabel = createInfoLabel(Color.LIGHT_GRAY);
+        colorLabel = createInfoLabel(Color.LIGHT_GRAY);
+        turnLabel = createInfoLabel(Color.LIGHT_GRAY);
+
+        infoPanel.add(gameIdLabel);
+        infoPanel.add(opponentLabel);
+        infoPanel.add(colorLabel);
+        infoPanel.add(turnLabel);
+
+        gameInfoPanel.add(infoPanel, BorderLayout.CENTER);
 
         gamePanel.add(gameInfoPanel, BorderLayout.NORTH);
 
         // Add the chess board panel
-        if (chessBoardPanel == null) {
-            chessBoardPanel = new ChessBoardPanel(plugin);
-        } else {
-            chessBoardPanel.updateBoard();
-        }
-
+        chessBoardPanel = new ChessBoardPanel(plugin);
         gamePanel.add(chessBoardPanel, BorderLayout.CENTER);
 
         // Add game status at the bottom
@@ -280,39 +372,294 @@ public class ChessPanel extends PluginPanel {
         statusPanel.setBackground(ColorScheme.DARKER_GRAY_COLOR);
         statusPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
 
-        JLabel statusLabel = new JLabel("Game in progress");
-        if (currentGame != null && currentGame.isGameOver()) {
-            String winner = currentGame.getWinner();
+        statusLabel = createInfoLabel(Color.WHITE);
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+
+        hintLabel = createInfoLabel(Color.LIGHT_GRAY);
+        statusPanel.add(hintLabel, BorderLayout.SOUTH);
+
+        gamePanel.add(statusPanel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Creates a label whose text changes only repaint it. Its size is fixed by the
+     * surrounding layout, so it acts as its own validate root and a new text never
+     * triggers a layout pass over the whole panel.
+     */
+    static JLabel createInfoLabel(Color color) {
+        JLabel label = new JLabel(" ") {
+            @Override
+            public boolean isValidateRoot() {
+                return true;
+            }
+        };
+        label.setForeground(color);
+        label.setHorizontalAlignment(SwingConstants.CENTER);
+        return label;
+    }
+
+    public void showGameBoard() {
+        long start = Metrics.start();
+        ChessEvents.ShowGameBoard event = new ChessEvents.ShowGameBoard();
+        event.begin();
+
+        // Create the game view if it doesn't exist
+        if (gamePanel == null) {
+            createGameView();
+        }
+
+        // Only swap the view in when it isn't already showing
+        if (gamePanel.getParent() != mainPanel) {
+            mainPanel.removeAll();
+            mainPanel.add(gamePanel, BorderLayout.CENTER);
+            mainPanel.revalidate();
+            mainPanel.repaint();
+        }
+
+        renderScheduler.flushNow(RenderScheduler.ALL);
+        Metrics.SHOW_GAME_BOARD.recordSince(start);
+        event.commitFor(plugin.getCurrentGame());
+    }
+
+    /**
+     * Updates the parts of the game view that changed, in place; called by the render scheduler
+     */
+    private void render(int changes) {
+        // Nothing to update while the menu is showing
+        if (gamePanel == null || gamePanel.getParent() != mainPanel) {
+            return;
+        }
+
+        ChessGame currentGame = plugin.getCurrentGame();
+        if (currentGame == null) {
+            return;
+        }
+
+        if ((changes & RenderScheduler.STATUS) != 0) {
+            refreshStatus(currentGame);
+        }
+
+        if ((changes & RenderScheduler.BOARD) != 0) {
+            chessBoardPanel.updateBoard();
+        } else if ((changes & RenderScheduler.HIGHLIGHTS) != 0) {
+            chessBoardPanel.updateHighlights();
+        }
+    }
+
+    /**
+     * Updates the game switcher and the labels above the board
+     */
+    private void refreshStatus(ChessGame currentGame) {
+        updateGameSwitcher(currentGame);
+
+        // Changing state comes from the published snapshot; the game changes on its own thread
+        BoardSnapshot snapshot = currentGame.getSnapshot();
+
+        gameIdLabel.setText("Game ID: " + currentGame.getGameId());
+        opponentLabel.setText("Playing against: " + currentGame.getOpponentName());
+        colorLabel.setText("Playing as: " + (currentGame.isPlayingAsWhite() ? "White" : "Black"));
+        turnLabel.setText(snapshot.isWhiteTurn() ? "White to move" : "Black to move");
+
+        if (snapshot.isGameOver()) {
+            String winner = snapshot.getResult();
             if (winner.equals("Draw")) {
                 statusLabel.setText("Game ended in a draw");
             } else {
                 statusLabel.setText(winner + " wins!");
             }
-        } else if (currentGame != null) {
-            statusLabel.setText(
-                    currentGame.isPlayerTurn() ? "Your turn" : "Waiting for opponent"
-            );
+        } else {
+            statusLabel.setText(snapshot.isWhiteTurn() == currentGame.isPlayingAsWhite() ? "Your turn" : "Waiting for opponent");
         }
-        statusLabel.setForeground(Color.WHITE);
-        statusLabel.setHorizontalAlignment(SwingConstants.CENTER);
-        statusPanel.add(statusLabel, BorderLayout.CENTER);
 
-        gamePanel.add(statusPanel, BorderLayout.SOUTH);
+        // A hint for an earlier position is no longer useful
+        if (hintGame != null && (hintGame != currentGame || hintPly != snapshot.getPlyCount())) {
+            cancelHint();
+        }
+
+        // Known opening positions show their book moves without being asked
+        if (hintGame == null) {
+            if (snapshot.isGameOver()) {
+                hintLabel.setText(" ");
+            } else {
+                showBookMoves(currentGame, snapshot.getPlyCount());
+            }
+        }
+    }
 
-        mainPanel.add(gamePanel, BorderLayout.CENTER);
+    /**
+     * Starts searching the current position; the best move so far is shown as each depth completes
+     */
+    private void requestHint() {
+        ChessGame currentGame = plugin.getCurrentGame();
+        if (currentGame == null || currentGame.getSnapshot().isGameOver()) {
+            return;
+        }
 
-        mainPanel.revalidate();
-        mainPanel.repaint();
+        cancelHint();
+
+        hintGame = currentGame;
+        hintPly = currentGame.getSnapshot().getPlyCount();
+        hintLabel.setText("Thinking...");
+
+        // The board belongs to the game's thread, so the book and FEN are read there
+        int ply = hintPly;
+        boolean queued = plugin.submit(currentGame, game -> {
+            try {
+                String bookMoves = describeBookMoves(game);
+                String fen = game.getFen();
+                SwingUtilities.invokeLater(() -> startHint(game, ply, bookMoves, fen));
+            } catch (Exception e) {
+                log.error("Failed to read the position for a hint in game {}", game.getGameId(), e);
+                SwingUtilities.invokeLater(() -> failHint(game, ply));
+            }
+        });
+        if (!queued) {
+            failHint(currentGame, ply);
+        }
     }
 
-    public void updateChessBoard() {
-        if (chessBoardPanel != null) {
-            chessBoardPanel.updateBoard();
+    /**
+     * Clears a hint that can't be started, unless it has been replaced or cancelled meanwhile
+     */
+    private void failHint(ChessGame game, int ply) {
+        if (hintGame == game && hintPly == ply && hintSearch == null) {
+            hintGame = null;
+            hintLabel.setText("No hint available");
+        }
+    }
+
+    private void startHint(ChessGame game, int ply, String bookMoves, String fen) {
+        // Cancelled, or the position changed, while the game's thread was busy
+        if (hintGame != game || hintPly != ply || hintSearch != null) {
+            return;
         }
 
-        // Also update game status if needed
-        if (gamePanel != null) {
-            showGameBoard();
+        // Book positions are already known, so there is nothing to search
+        if (!bookMoves.equals(" ")) {
+            hintGame = null;
+            hintLabel.setText(bookMoves);
+            return;
+        }
+
+        SearchEngine.Search[] started = new SearchEngine.Search[1];
+        started[0] = plugin.getSearchEngine().start(fen, SearchLimits.ofTime(HINT_TIME_MILLIS),
+                new SearchListener() {
+                    @Override
+                    public void onInfo(SearchInfo info) {
+                        SwingUtilities.invokeLater(() -> showHint(started[0], info, false));
+                    }
+
+                    @Override
+                    public void onComplete(SearchInfo info) {
+                        SwingUtilities.invokeLater(() -> showHint(started[0], info, true));
+                    }
+                });
+        hintSearch = started[0];
+    }
+
+    private void showHint(SearchEngine.Search search, SearchInfo info, boolean complete) {
+        // Ignore updates from a search that has since been replaced or cancelled
+        if (search != hintSearch || search.isCancelled()) {
+            return;
         }
+
+        if (info == null) {
+            hintLabel.setText(complete ? "No hint available" : "Thinking...");
+            return;
+        }
+
+        hintLabel.setText((complete ? "Hint: " : "Thinking: ") + PackedMove.toString(info.getBestMove())
+                + " (" + info.formatScore() + ", depth " + info.getDepth() + ")");
+    }
+
+    /**
+     * Looks up the book moves on the game's thread and shows them if nothing has replaced the position since
+     */
+    private void showBookMoves(ChessGame game, int ply) {
+        plugin.submit(game, target -> {
+            String bookMoves = describeBookMoves(target);
+            SwingUtilities.invokeLater(() -> {
+                if (hintGame == null && plugin.getCurrentGame() == target && target.getSnapshot().getPlyCount() == ply) {
+                    hintLabel.setText(bookMoves);
+                }
+            });
+        });
+    }
+
+    /**
+     * The book moves for the game's position with their share of the total weight, or a blank line if out of book;
+     * runs on the game's thread
+     */
+    private String describeBookMoves(ChessGame game) {
+        OpeningBook book = plugin.getOpeningBook();
+        if (book == null) {
+            return " ";
+        }
+
+        List<OpeningBook.BookMove> moves = game.getBookMoves(book);
+        if (moves.isEmpty()) {
+            return " ";
+        }
+
+        int totalWeight = 0;
+        for (OpeningBook.BookMove move : moves) {
+            totalWeight += move.getWeight();
+        }
+
+        // The label has room for the three most played moves
+        StringBuilder text = new StringBuilder("Book: ");
+        for (int i = 0; i < Math.min(3, moves.size()); i++) {
+            OpeningBook.BookMove move = moves.get(i);
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(PackedMove.toString(move.getMove()))
+                    .append(' ').append(move.getWeight() * 100 / totalWeight).append('%');
+        }
+        return text.toString();
+    }
+
+    private void cancelHint() {
+        if (hintSearch != null) {
+            hintSearch.cancel();
+            hintSearch = null;
+        }
+        hintGame = null;
+
+        if (hintLabel != null) {
+            hintLabel.setText(" ");
+        }
+    }
+
+    /**
+     * Syncs the switcher with the registry, touching its model only when the set of games changed
+     */
+    private void updateGameSwitcher(ChessGame currentGame) {
+        updatingGameSwitcher = true;
+        try {
+            List<ChessGame> games = plugin.getGameRegistry().getGames();
+
+            boolean changed = games.size() != gameSwitcher.getItemCount();
+            for (int i = 0; !changed && i < games.size(); i++) {
+                changed = games.get(i) != gameSwitcher.getItemAt(i);
+            }
+
+            if (changed) {
+                gameSwitcher.setModel(new DefaultComboBoxModel<>(games.toArray(new ChessGame[0])));
+            }
+
+            if (gameSwitcher.getSelectedItem() != currentGame) {
+                gameSwitcher.setSelectedItem(currentGame);
+            }
+        } finally {
+            updatingGameSwitcher = false;
+        }
+    }
+
+    /**
+     * Marks parts of the game view as changed, to be redrawn with the next frame; safe to call from any thread
+     */
+    public void markChanged(int changes) {
+        renderScheduler.mark(changes);
     }
 }
\ No newline at end of file
@@ -2,8 +2,8 @@ package com.chess;
 
 import com.google.inject.Provides;
 import javax.inject.Inject;
+import javax.swing.SwingUtilities;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.ChatMessageType;
 import net.runelite.api.Client;
@@ -12,9 +12,11 @@ import net.runelite.api.VarClientInt;
 import net.runelite.api.VarClientStr;
 import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameStateChanged;
+import net.runelite.client.RuneLite;
 import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.ClientToolbar;
@@ -25,6 +27,14 @@ import net.runelite.client.util.Text;
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @PluginDescriptor(
@@ -50,18 +60,58 @@ public class ChessPlugin extends Plugin
 	@Inject
 	private ClientThread clientThread;
 
+	// Games in progress, keyed by game ID and opponent; the active one is shown in the panel
 	@Getter
-	@Setter
-	private ChessGame currentGame;
+	private final GameRegistry gameRegistry = new GameRegistry();
 
 	private ChessPanel panel;
 	private NavigationButton navButton;
 
+	// Per-move journal; full snapshots go to the config every few plies
+	private GameJournal journal;
+
+	// Finished games, listed from the main menu
+	@Getter
+	private GameArchive gameArchive;
+
+	// Analysis engine for hints; searches on its own worker thread
+	@Getter
+	private SearchEngine searchEngine;
+
+	// Polyglot book from the config, or null if none is set or it could not be opened
+	@Getter
+	private volatile OpeningBook openingBook;
+
+	// Writes journals and snapshots off the client and Swing threads
+	@Getter
+	private PersistenceWriter persistenceWriter;
+
+	// Runs every change to a game on that game's own thread; the Swing and client threads only queue commands
+	private GameExecutor gameExecutor;
+
+	// Reused for every incoming chat message; only touched on the client thread
+	private final ChessMessage incomingMessage = new ChessMessage();
+
+	// Most moves a resync answer carries before falling back to sending the whole position
+	private static final int RESYNC_MAX_MOVES = ChessMessage.MAX_RECORDS - 1;
+
+	// Games where the player offered a draw during their turn; the offer goes out with their next move
+	private final Set<String> pendingDrawOffers = ConcurrentHashMap.newKeySet();
+
 	@Override
 	protected void startUp() throws Exception
 	{
 		log.info("Chess game plugin started!");
 
+		Path dataDirectory = RuneLite.RUNELITE_DIR.toPath().resolve("chess");
+		journal = new GameJournal(dataDirectory);
+		gameArchive = new GameArchive(dataDirectory);
+		persistenceWriter = new PersistenceWriter(configManager, journal, gameArchive);
+		searchEngine = new SearchEngine(config.engineThreads(), config.engineHashSize());
+		gameExecutor = new GameExecutor(this::publishGame);
+		Metrics.setEnabled(config.metricsEnabled());
+		loadOpeningBook();
+
 		// Create the panel
 		panel = new ChessPanel(this);
 
@@ -79,6 +129,9 @@ public class ChessPlugin extends Plugin
 		// Add the button to the toolbar
 		clientToolbar.addNavigation(navButton);
 
+		// Show newly archived games in the menu's list
+		gameArchive.setAppendListener(() -> SwingUtilities.invokeLater(panel::refreshArchive));
+
 		// Try to load existing game
 		loadExistingGame();
 	}
@@ -88,74 +141,241 @@ public class ChessPlugin extends Plugin
 	{
 		log.info("Chess game plugin stopped!");
 
-		// Save game state if needed
-		saveCurrentGame();
+		// Snapshot every game on its own thread, after the commands already queued, so the
+		// next start doesn't need to replay its journal
+		for (ChessGame game : gameRegistry.getGames()) {
+			submit(game, this::saveGame);
+		}
+
+		// Let the queued commands finish; nothing touches the games after this
+		if (!gameExecutor.shutDown()) {
+			log.warn("Some games were not snapshotted at shutdown; their journals still hold their moves");
+		}
+
+		searchEngine.shutDown();
+		closeOpeningBook();
+		panel.setMetricsVisible(false);
+
+		// Write everything still pending before the plugin goes away
+		persistenceWriter.shutDown();
+		gameArchive.setAppendListener(null);
+		gameArchive.close();
 
 		// Remove the navigation button
 		clientToolbar.removeNavigation(navButton);
 	}
 
+	/**
+	 * Queues a command on the game's own thread; every change to a game goes through here.
+	 * Returns false if the game has too many commands waiting.
+	 */
+	public boolean submit(ChessGame game, GameExecutor.Command command) {
+		return gameExecutor.submit(game, command);
+	}
+
+	/**
+	 * Called on a game's thread after its commands have run; marks what changed since the
+	 * previous snapshot so the panel redraws it with its next frame
+	 */
+	private void publishGame(ChessGame game, BoardSnapshot previous) {
+		if (panel != null && game == getCurrentGame()) {
+			panel.markChanged(RenderScheduler.changesBetween(previous, game.getSnapshot()));
+		}
+	}
+
+	/**
+	 * The game currently shown in the panel, or null if there is none
+	 */
+	public ChessGame getCurrentGame() {
+		return gameRegistry.getActiveGame();
+	}
+
+	/**
+	 * Switches the panel to another game in progress
+	 */
+	public void setActiveGame(String gameId) {
+		if (gameRegistry.setActiveGame(gameId)) {
+			config.setCurrentGameId(gameId);
+
+			if (panel != null) {
+				panel.showGameBoard();
+			}
+		}
+	}
+
 	private void loadExistingGame() {
-		// Check if we have a saved game
-		String savedGameData = config.savedGameData();
-		if (savedGameData != null && !savedGameData.isEmpty()) {
+		migrateLegacySavedGame();
+
+		// Load every saved game in the index
+		for (String gameId : splitGameIds(config.gameIds())) {
+			String savedGameData = configManager.getConfiguration(ChessConfig.GROUP, ChessConfig.GAME_KEY_PREFIX + gameId);
+			if (savedGameData == null || savedGameData.isEmpty()) {
+				continue;
+			}
+
 			try {
-				// Create a new game from the saved data
-				currentGame = ChessGame.fromSerialized(savedGameData);
+				// Restore the latest snapshot, then replay the moves journaled since on the game's
+				// thread, ahead of any command that could reach it once it is registered
+				ChessGame game = ChessGame.fromSerialized(savedGameData);
+				gameExecutor.add(game);
+				submit(game, this::recoverJournal);
+				gameRegistry.add(game);
+
+				log.info("Loaded saved chess game: {}", game.getGameId());
+			} catch (Exception e) {
+				log.error("Failed to load saved game {}", gameId, e);
+			}
+		}
 
-				// Set opponent name and color
-				currentGame.setOpponentName(config.opponentName());
-				currentGame.setPlayingAsWhite(config.playingAsWhite());
+		if (gameRegistry.isEmpty()) {
+			return;
+		}
 
-				if (panel != null) {
-					clientThread.invokeLater(() -> panel.showGameBoard());
-				}
+		// Restore the game that was last shown, or the first one if that ID is empty or stale
+		if (!gameRegistry.setActiveGame(config.currentGameId())) {
+			String firstGameId = gameRegistry.getGameIds().get(0);
+			gameRegistry.setActiveGame(firstGameId);
+			config.setCurrentGameId(firstGameId);
+		}
 
-				log.info("Loaded saved chess game: {}", currentGame.getGameId());
-			} catch (Exception e) {
-				log.error("Failed to load saved game", e);
-				currentGame = null;
+		if (panel != null) {
+			SwingUtilities.invokeLater(panel::showGameBoard);
+		}
+	}
+
+	private void recoverJournal(ChessGame game) {
+		try {
+			journal.recover(game);
+		} catch (IOException e) {
+			log.warn("Failed to replay journal for game {}, using its last snapshot", game.getGameId(), e);
+		}
+	}
+
+	/**
+	 * Moves a game saved by older versions, which only supported one game, into the per-game keys
+	 */
+	private void migrateLegacySavedGame() {
+		String savedGameData = config.savedGameData();
+		if (savedGameData == null || savedGameData.isEmpty()) {
+			return;
+		}
+
+		try {
+			ChessGame game = ChessGame.fromSerialized(savedGameData);
+
+			// Set opponent name and color
+			game.setOpponentName(config.opponentName());
+			game.setPlayingAsWhite(config.playingAsWhite());
+
+			saveGame(game);
+
+			// Add it to the index so it is loaded with the other games
+			List<String> gameIds = splitGameIds(config.gameIds());
+			if (!gameIds.contains(game.getGameId())) {
+				gameIds.add(game.getGameId());
+				config.setGameIds(String.join(",", gameIds));
 			}
+			config.setCurrentGameId(game.getGameId());
+		} catch (Exception e) {
+			log.error("Failed to migrate saved game", e);
 		}
+
+		config.setSavedGameData("");
+		config.setOpponentName("");
 	}
 
-	public void saveCurrentGame() {
-		if (currentGame != null) {
-			try {
-				String serialized = currentGame.serialize();
-				config.setSavedGameData(serialized);
-				config.setCurrentGameId(currentGame.getGameId());
-				config.setOpponentName(currentGame.getOpponentName());
-				config.setPlayingAsWhite(currentGame.isPlayingAsWhite());
+	private static List<String> splitGameIds(String gameIds) {
+		List<String> ids = new ArrayList<>();
+		if (gameIds == null) {
+			return ids;
+		}
 
-				log.info("Saved chess game: {}", currentGame.getGameId());
-			} catch (Exception e) {
-				log.error("Failed to save game", e);
+		for (String id : gameIds.split(",")) {
+			if (!id.isEmpty()) {
+				ids.add(id);
 			}
-		} else {
-			// Clear saved game
-			config.setSavedGameData("");
-			config.setCurrentGameId("");
-			config.setOpponentName("");
 		}
+		return ids;
 	}
 
-	public void createNewGame(String opponentName) {
-		// Create a new game
-		currentGame = new ChessGame();
-		currentGame.setOpponentName(opponentName);
-		currentGame.setPlayingAsWhite(true); // Creator plays as white
+	/**
+	 * Saves the list of games in progress; only needed when a game is added or removed
+	 */
+	private void saveGameIndex() {
+		config.setGameIds(String.join(",", gameRegistry.getGameIds()));
+	}
+
+	/**
+	 * Queues a full snapshot of a single game under its own config key; runs on the game's thread
+	 */
+	public void saveGame(ChessGame game) {
+		long start = Metrics.start();
+		ChessEvents.SaveGame event = new ChessEvents.SaveGame();
+		event.begin();
+
+		persistenceWriter.saveGame(game);
+
+		Metrics.SAVE_GAME.recordSince(start);
+		event.commitFor(game);
+	}
 
-		// Save the game
-		saveCurrentGame();
+	/**
+	 * Queues a game's last move for its journal; a snapshot is only taken every few plies
+	 */
+	private void saveMove(ChessGame game) {
+		persistenceWriter.saveMove(game);
+	}
+
+	/**
+	 * Registers a new game, makes it active and saves it. Returns false, telling the player,
+	 * if a game against the same opponent is already in progress, as their messages
+	 * couldn't always be told apart.
+	 */
+	private boolean startGame(ChessGame game) {
+		if (gameRegistry.hasOpponent(game.getOpponentName())) {
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: You already have a game in progress with " + game.getOpponentName() + ".",
+					null));
+			return false;
+		}
+
+		gameExecutor.add(game);
+		ChessGame replaced = gameRegistry.add(game);
+		if (replaced != null) {
+			// A game with the same ID is started again; the old one's queued commands still run
+			gameExecutor.remove(replaced);
+		}
+		gameRegistry.setActiveGame(game.getGameId());
+
+		// Save the game, dropping any journal left over from an earlier game with the same ID
+		submit(game, started -> {
+			persistenceWriter.deleteGame(started.getGameId());
+			saveGame(started);
+		});
+		saveGameIndex();
+		config.setCurrentGameId(game.getGameId());
 
 		// Update the UI
 		if (panel != null) {
 			panel.showGameBoard();
 		}
+		return true;
+	}
+
+	public void createNewGame(String opponentName) {
+		// Create a new game
+		ChessGame game = new ChessGame();
+		game.setOpponentName(opponentName);
+		game.setPlayingAsWhite(true); // Creator plays as white
+
+		if (!startGame(game)) {
+			return;
+		}
 
 		// Notify the player
-		String gameId = currentGame.getGameId();
+		String gameId = game.getGameId();
 		clientThread.invoke(() ->
 				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
 				"",
@@ -176,16 +396,12 @@ public class ChessPlugin extends Plugin
 
 	public void joinGame(String gameId, String opponentName) {
 		// Create a new game with the given ID
-		currentGame = new ChessGame(gameId);
-		currentGame.setOpponentName(opponentName);
-		currentGame.setPlayingAsWhite(false); // Joiner plays as black
-
-		// Save the game
-		saveCurrentGame();
+		ChessGame game = new ChessGame(gameId);
+		game.setOpponentName(opponentName);
+		game.setPlayingAsWhite(false); // Joiner plays as black
 
-		// Update the UI
-		if (panel != null) {
-			panel.showGameBoard();
+		if (!startGame(game)) {
+			return;
 		}
 
 		// Notify the player
@@ -196,48 +412,76 @@ public class ChessPlugin extends Plugin
 				null));
 
 		// Send a message to the opponent to confirm
-		sendJoinConfirmation();
+		sendJoinConfirmation(game);
 	}
 
-	private void sendJoinConfirmation() {
-		if (currentGame == null || currentGame.getOpponentName() == null) {
+	private void sendJoinConfirmation(ChessGame currentGame) {
+		sendToOpponent(currentGame,
+				new ChessWireFormat.Batch(currentGame.getGameId()).join(),
+				"New game message");
+	}
+
+	public void resetGame() {
+		ChessGame currentGame = getCurrentGame();
+		if (currentGame == null) {
 			return;
 		}
 
-		String message = "CHESS:" + currentGame.getGameId() + ":JOIN";
+		// Remove the current game; another game in progress becomes active
+		gameRegistry.remove(currentGame.getGameId());
+		pendingDrawOffers.remove(currentGame.getGameId());
 
-		Toolkit.getDefaultToolkit()
-				.getSystemClipboard()
-				.setContents(new StringSelection(message), null);
-
-		clientThread.invoke(() ->
-				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
-				"",
-				"Chess Game: New game message copied to clipboard. Please send it to " +
-						currentGame.getOpponentName() + " via private message to start.",
-				null));
-	}
-
-	public void resetGame() {
-		// Clear the current game
-		currentGame = null;
+		// Archive and delete it once the commands still queued for it have run; nothing else is accepted after
+		submit(currentGame, this::retireGame);
+		gameExecutor.remove(currentGame);
+		saveGameIndex();
 
-		// Clear saved game
-		config.setSavedGameData("");
-		config.setCurrentGameId("");
-		config.setOpponentName("");
+		ChessGame nextGame = getCurrentGame();
+		config.setCurrentGameId(nextGame != null ? nextGame.getGameId() : "");
 
 		// Update UI
 		if (panel != null) {
-			panel.showMainMenu();
+			if (nextGame != null) {
+				panel.showGameBoard();
+			} else {
+				panel.showMainMenu();
+			}
 		}
 	}
 
-	public boolean makeMove(String from, String to) {
-		if (currentGame == null) {
-			return false;
+	/**
+	 * Keeps a removed game in the archive if it got anywhere, then clears its saved data
+	 */
+	private void retireGame(ChessGame game) {
+		// Clear again here, in case a command queued before the reset added an offer
+		pendingDrawOffers.remove(game.getGameId());
+
+		if (game.isGameOver() || game.getPlyCount() > 0) {
+			persistenceWriter.archiveGame(game);
 		}
+		persistenceWriter.deleteGame(game.getGameId());
+	}
+
+	public boolean makeMove(String from, String to) {
+		return makeMove(from, to, PackedMove.NO_PROMOTION);
+	}
+
+	public boolean makeMove(String from, String to, int promotion) {
+		int fromSquare = BoardSnapshot.squareIndex(from);
+		int toSquare = BoardSnapshot.squareIndex(to);
+		return fromSquare >= 0 && toSquare >= 0 && makeMove(PackedMove.of(fromSquare, toSquare, promotion));
+	}
 
+	/**
+	 * Queues the player's move in the current game, to be checked, played and sent to the
+	 * opponent on the game's thread. Returns false if there is no game or the move was refused.
+	 */
+	public boolean makeMove(short move) {
+		ChessGame currentGame = getCurrentGame();
+		return currentGame != null && submit(currentGame, game -> playMove(game, move));
+	}
+
+	private void playMove(ChessGame currentGame, short move) {
 		// Check if it's this player's turn
 		if (!currentGame.isPlayerTurn()) {
 			clientThread.invoke(() ->
@@ -245,78 +489,117 @@ public class ChessPlugin extends Plugin
 					"",
 					"Chess Game: It's not your turn!",
 					null));
-			return false;
+			return;
 		}
 
 		// Try to make the move
-		boolean moveSuccessful = currentGame.makeMove(from, to);
-
-		if (moveSuccessful) {
+		if (currentGame.makeMove(move)) {
 			// Save the game state
-			saveCurrentGame();
-
-			// Update UI
-			if (panel != null) {
-				panel.updateChessBoard();
-			}
+			saveMove(currentGame);
 
 			// Send move to opponent via chat
-			sendMoveToOpponent(from, to);
+			sendMoveToOpponent(currentGame, currentGame.getLastPackedMove());
 
 			// Notify about the move
-			clientThread.invokeLater(() -> {
-				client.addChatMessage(
-						ChatMessageType.GAMEMESSAGE,
-						"",
-						"Chess Game: Moved from " + from + " to " + to + ".",
-						null);
+			clientThread.invokeLater(() ->
+					client.addChatMessage(
+					ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: Moved from " + BoardSnapshot.squareKey(PackedMove.from(move))
+							+ " to " + BoardSnapshot.squareKey(PackedMove.to(move)) + ".",
+					null));
 
-				// Check if game is over
-				if (currentGame.isGameOver()) {
-					String winner = currentGame.getWinner();
-					if (winner.equals("Draw")) {
-						clientThread.invoke(() ->
-								client.addChatMessage(ChatMessageType.GAMEMESSAGE,
-								"",
-								"Chess Game: Game ended in a draw!",
-								null));
-					} else {
-						clientThread.invoke(() ->
-								client.addChatMessage(ChatMessageType.GAMEMESSAGE,
-								"",
-								"Chess Game: " + winner + " wins!",
-								null));
-					}
-				}
-			});
+			// Check if game is over
+			notifyIfGameOver(currentGame);
+		}
+	}
+
+	/**
+	 * Queues a premove in the current game, played once the opponent has moved; ignored if the queue is full
+	 */
+	public void queuePremove(short move) {
+		ChessGame currentGame = getCurrentGame();
+		if (currentGame != null) {
+			submit(currentGame, game -> game.queuePremove(move));
 		}
+	}
 
-		return moveSuccessful;
+	public void clearPremoves() {
+		ChessGame currentGame = getCurrentGame();
+		if (currentGame != null) {
+			submit(currentGame, ChessGame::clearPremoves);
+		}
 	}
 
-	private void sendMoveToOpponent(String from, String to) {
-		if (currentGame == null || currentGame.getOpponentName() == null) {
+	private void sendMoveToOpponent(ChessGame currentGame, short move) {
+		ChessWireFormat.Batch batch = new ChessWireFormat.Batch(currentGame.getGameId())
+				.move(move)
+				.sync(currentGame.getPlyCount(), currentGame.getPositionHash());
+
+		// A draw offer made during our turn goes out with the move
+		if (pendingDrawOffers.remove(currentGame.getGameId())) {
+			batch.drawOffer();
+			currentGame.setDrawOfferedByPlayer(true);
+		}
+
+		sendToOpponent(currentGame, batch, "Move message");
+	}
+
+	/**
+	 * Copies a batch of records to the clipboard for the player to send to their opponent
+	 */
+	private void sendToOpponent(ChessGame currentGame, ChessWireFormat.Batch batch, String description) {
+		if (currentGame.getOpponentName() == null) {
 			return;
 		}
 
-		String moveMessage = currentGame.createMoveMessage(from, to);
+		if (batch.length() > ChessWireFormat.MAX_LINE_LENGTH) {
+			log.warn("{} for game {} is {} chars, too long for a private message", description, currentGame.getGameId(), batch.length());
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: " + description + " is too long to send to " + currentGame.getOpponentName() + ".",
+					null));
+			return;
+		}
 
 		Toolkit.getDefaultToolkit()
 				.getSystemClipboard()
-				.setContents(new StringSelection(moveMessage), null);
+				.setContents(new StringSelection(batch.toString()), null);
 
 		clientThread.invoke(() ->
 				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
 				"",
-				"Chess Game: Move message copied to clipboard. Please send it to " +
+				"Chess Game: " + description + " copied to clipboard. Please send it to " +
 						currentGame.getOpponentName() + " via private message.",
 				null));
 	}
 
+	private void notifyIfGameOver(ChessGame currentGame) {
+		if (!currentGame.isGameOver()) {
+			return;
+		}
+
+		String winner = currentGame.getWinner();
+		if (winner.equals("Draw")) {
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: Game ended in a draw!",
+					null));
+		} else {
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: " + winner + " wins!",
+					null));
+		}
+	}
+
 	@Subscribe
 	public void onChatMessage(ChatMessage chatMessage) {
 		// Check if we're in a game
-		if (currentGame == null) {
+		if (gameRegistry.isEmpty()) {
 			return;
 		}
 
@@ -326,89 +609,277 @@ public class ChessPlugin extends Plugin
 			return;
 		}
 
-		// Get sender and message
-		String sender = Text.removeTags(chatMessage.getName());
-		String message = chatMessage.getMessage();
-
 		// Skip our own outgoing messages
 		if (chatMessage.getType() == ChatMessageType.PRIVATECHATOUT) {
 			return;
 		}
 
-		// Only process messages from our opponent
-		if (!sender.equals(currentGame.getOpponentName())) {
+		// Check if this is a chess message; ordinary chat is rejected after a couple of chars
+		long parseStart = Metrics.start();
+		boolean parsed = ChessMessageParser.parse(chatMessage.getMessage(), incomingMessage);
+		Metrics.CHAT_PARSE.recordSince(parseStart);
+		if (!parsed) {
 			return;
 		}
+		Metrics.CHAT_MESSAGES.increment();
 
-		// Check if this is a chess move
-		if (message.startsWith("CHESS:")) {
-			processChessMessage(message);
+		// Route the message to its game, which must be played against the sender
+		String sender = Text.removeTags(chatMessage.getName());
+		ChessGame game = gameRegistry.findGame(sender, incomingMessage);
+		if (game != null) {
+			// The parsed message is reused for the next line, so the game's thread gets a copy
+			ChessMessage message = new ChessMessage();
+			message.copyFrom(incomingMessage);
+			submit(game, target -> dispatchChessMessage(target, message));
 		}
 	}
 
-	private void processChessMessage(String message) {
-		if (currentGame == null) {
+	private void dispatchChessMessage(ChessGame game, ChessMessage message) {
+		long dispatchStart = Metrics.start();
+		ChessEvents.ChatDispatch event = new ChessEvents.ChatDispatch();
+		event.begin();
+
+		processChessMessage(game, message);
+
+		Metrics.CHAT_DISPATCH.recordSince(dispatchStart);
+		event.commitFor(game);
+	}
+
+	private void processChessMessage(ChessGame currentGame, ChessMessage message) {
+		// A resync answer replaces our position; nothing else comes with it
+		if (message.findRecord(ChessMessage.POSITION) >= 0) {
+			processPosition(currentGame, message);
 			return;
 		}
 
-		// Parse the message
-		String[] parts = ChessGame.parseMoveMessage(message);
-		if (parts == null || parts.length < 3) {
+		// Moves come with the sender's ply and position hash, so a missed, repeated or
+		// diverging message is caught before anything is applied
+		int sync = message.findRecord(ChessMessage.SYNC);
+		int syncValue = sync >= 0 ? message.getRecordValue(sync) : 0;
+		int movesToSkip = 0;
+		if (sync >= 0) {
+			int moveCount = message.countRecords(ChessMessage.MOVE);
+			int senderPly = ChessWireFormat.unwrapPly(ChessWireFormat.syncPly(syncValue), currentGame.getPlyCount());
+			int firstPly = senderPly - moveCount;
+
+			if (firstPly > currentGame.getPlyCount()) {
+				// Earlier moves never arrived
+				requestResync(currentGame);
+				return;
+			}
+
+			movesToSkip = currentGame.getPlyCount() - firstPly;
+			if (movesToSkip >= moveCount) {
+				// Nothing new: a repeated message if we reached the same position, otherwise a desync
+				if (!matchesSyncHash(currentGame.getPositionHash(senderPly), syncValue)) {
+					requestResync(currentGame);
+				} else {
+					log.debug("Ignoring repeated message for game {} at ply {}", currentGame.getGameId(), senderPly);
+				}
+				return;
+			}
+		}
+
+		// A message may batch several records; apply them in order
+		boolean opponentMoved = false;
+		for (int i = 0; i < message.getRecordCount(); i++) {
+			switch (message.getRecordType(i)) {
+				case ChessMessage.JOIN:
+					clientThread.invoke(() ->
+							client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+							"",
+							"Chess Game: " + currentGame.getOpponentName() + " has joined the game!",
+							null));
+					break;
+				case ChessMessage.RESIGN:
+					processResignation(currentGame);
+					return;
+				case ChessMessage.MOVE:
+					// Moves we already have from an earlier copy of the message
+					if (movesToSkip > 0) {
+						movesToSkip--;
+						break;
+					}
+					if (!processMove(currentGame, (short) message.getRecordValue(i))) {
+						if (sync >= 0) {
+							requestResync(currentGame);
+						}
+						return;
+					}
+					opponentMoved = true;
+					break;
+				case ChessMessage.RESYNC:
+					processResyncRequest(currentGame, message.getRecordValue(i));
+					break;
+				case ChessMessage.DRAW_OFFER:
+					processDrawOffer(currentGame);
+					break;
+				case ChessMessage.TAKEBACK:
+					processTakeback(currentGame, message.getRecordValue(i));
+					break;
+				default:
+					// Acks and clock updates carry no state we track yet
+					break;
+			}
+		}
+
+		// After the sender's moves both boards must hold the same position
+		if (sync >= 0 && opponentMoved && !matchesSyncHash(currentGame.getPositionHash(), syncValue)) {
+			requestResync(currentGame);
 			return;
 		}
 
-		String messageGameId = parts[0];
+		if (opponentMoved) {
+			playPremove(currentGame);
+		}
+	}
+
+	private static boolean matchesSyncHash(long positionHash, int syncValue) {
+		return ChessWireFormat.shortHash(positionHash) == ChessWireFormat.syncHash(syncValue);
+	}
+
+	/**
+	 * Asks the opponent for everything after our current ply; they answer with the missing
+	 * moves or, if our position differs from theirs, with their whole position
+	 */
+	private void requestResync(ChessGame currentGame) {
+		Metrics.RESYNC_REQUESTS.increment();
+		log.info("Game {} is out of sync at ply {}, requesting a resync", currentGame.getGameId(), currentGame.getPlyCount());
 
-		// Check if this is for our current game
-		if (!messageGameId.equals(currentGame.getGameId())) {
+		clientThread.invoke(() ->
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+				"",
+				"Chess Game: Your board is out of sync with " + currentGame.getOpponentName() + ".",
+				null));
+
+		sendToOpponent(currentGame,
+				new ChessWireFormat.Batch(currentGame.getGameId())
+						.resync(currentGame.getPlyCount(), currentGame.getPositionHash()),
+				"Resync request");
+	}
+
+	/**
+	 * Answers a resync request with the moves the opponent is missing, or with our position
+	 * when theirs differs from ours or too many moves are missing to fit in one message
+	 */
+	private void processResyncRequest(ChessGame currentGame, int requestValue) {
+		int plyCount = currentGame.getPlyCount();
+		int requestedPly = ChessWireFormat.unwrapPly(ChessWireFormat.syncPly(requestValue), plyCount);
+
+		if (requestedPly > plyCount) {
+			// The opponent is ahead, so we are the one missing moves
+			requestResync(currentGame);
+			return;
+		}
+
+		boolean sendMoves = matchesSyncHash(currentGame.getPositionHash(requestedPly), requestValue)
+				&& plyCount - requestedPly <= RESYNC_MAX_MOVES;
+		for (int ply = requestedPly; sendMoves && ply < plyCount; ply++) {
+			sendMoves = currentGame.getMove(ply) != PackedMove.NONE;
+		}
+
+		if (sendMoves && requestedPly == plyCount) {
+			log.debug("Resync request for game {} at ply {} is already in sync", currentGame.getGameId(), plyCount);
 			return;
 		}
 
-		// Check if this is a JOIN message
-		if (parts[1].equals("JOIN")) {
+		ChessWireFormat.Batch batch = new ChessWireFormat.Batch(currentGame.getGameId());
+		if (sendMoves) {
+			for (int ply = requestedPly; ply < plyCount; ply++) {
+				batch.move(currentGame.getMove(ply));
+			}
+			batch.sync(plyCount, currentGame.getPositionHash());
+		} else {
+			// The packed position leaves out the move number, which is implied by the ply
+			batch.sync(plyCount, currentGame.getPositionHash()).position(currentGame.getFen());
+		}
+
+		sendToOpponent(currentGame, batch, "Resync");
+	}
+
+	/**
+	 * Replaces our position with the one the opponent sent in answer to a resync request
+	 */
+	private void processPosition(ChessGame currentGame, ChessMessage message) {
+		int sync = message.findRecord(ChessMessage.SYNC);
+		String position = message.getPosition();
+		if (sync < 0 || position == null) {
+			return;
+		}
+
+		int syncValue = message.getRecordValue(sync);
+		int ply = ChessWireFormat.unwrapPly(ChessWireFormat.syncPly(syncValue), currentGame.getPlyCount());
+		String fen = position + " " + (ply / 2 + 1);
+
+		if (!currentGame.resync(fen, ply, ChessWireFormat.syncHash(syncValue))) {
+			log.warn("Ignoring resync position for game {} that doesn't match its hash: {}", currentGame.getGameId(), fen);
+			return;
+		}
+
+		// Earlier journaled moves no longer lead to this position
+		persistenceWriter.replaceGame(currentGame);
+
+		clientThread.invoke(() ->
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+				"",
+				"Chess Game: Board resynced with " + currentGame.getOpponentName() + ".",
+				null));
+		notifyIfGameOver(currentGame);
+	}
+
+	/**
+	 * Answers the opponent's move with the player's oldest premove, sent straight away if it is still legal
+	 */
+	private void playPremove(ChessGame currentGame) {
+		if (!currentGame.hasPremoves()) {
+			return;
+		}
+
+		short move = currentGame.playPremove();
+		if (move != PackedMove.NONE) {
+			saveMove(currentGame);
+			sendMoveToOpponent(currentGame, move);
+
 			clientThread.invoke(() ->
 					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
 					"",
-					"Chess Game: " + currentGame.getOpponentName() + " has joined the game!",
+					"Chess Game: Premove " + PackedMove.toString(move) + " played.",
 					null));
-			return;
-		}
-
-		// Check if this is a RESIGN message
-		if (parts[1].equals("RESIGN")) {
+			notifyIfGameOver(currentGame);
+		} else if (!currentGame.isGameOver() && currentGame.isPlayerTurn()) {
 			clientThread.invoke(() ->
 					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
 					"",
-					"Chess Game: " + currentGame.getOpponentName() + " has resigned!",
+					"Chess Game: Your premove is no longer legal, so your premoves were cleared.",
 					null));
+		}
+	}
 
-			// End the game
-			try {
-				java.lang.reflect.Field gameOverField = ChessGame.class.getDeclaredField("gameOver");
-				gameOverField.setAccessible(true);
-				gameOverField.set(currentGame, true);
-
-				java.lang.reflect.Field winnerField = ChessGame.class.getDeclaredField("winner");
-				winnerField.setAccessible(true);
-				winnerField.set(currentGame, currentGame.isPlayingAsWhite() ? "White" : "Black");
-
-				// Save the game state
-				saveCurrentGame();
+	private void processResignation(ChessGame currentGame) {
+		clientThread.invoke(() ->
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+				"",
+				"Chess Game: " + currentGame.getOpponentName() + " has resigned!",
+				null));
 
-				// Update UI
-				if (panel != null) {
-					panel.updateChessBoard();
-				}
-			} catch (Exception e) {
-				log.error("Failed to process resignation", e);
-			}
+		// End the game
+		try {
+			currentGame.endGame(currentGame.isPlayingAsWhite() ? "White" : "Black");
+			pendingDrawOffers.remove(currentGame.getGameId());
 
-			return;
+			// Save the game state
+			saveGame(currentGame);
+		} catch (Exception e) {
+			log.error("Failed to process resignation", e);
 		}
+	}
 
-		// This is a move message
-		String fromSquare = parts[1];
-		String toSquare = parts[2];
+	/**
+	 * Applies a move received from the opponent, returning false if it could not be applied
+	 */
+	private boolean processMove(ChessGame currentGame, short move) {
+		String fromSquare = BoardSnapshot.squareKey(PackedMove.from(move));
+		String toSquare = BoardSnapshot.squareKey(PackedMove.to(move));
 
 		// Make the move on our board
 		try {
@@ -419,45 +890,25 @@ public class ChessPlugin extends Plugin
 						"",
 						"Chess Game: Received unexpected move from opponent when it's your turn!",
 						null));
-				return;
+				return false;
 			}
 
 			// Apply the move
-			boolean moveSuccessful = currentGame.makeMove(fromSquare, toSquare);
+			boolean moveSuccessful = currentGame.makeMove(move);
 
 			if (moveSuccessful) {
 				// Save the game state
-				saveCurrentGame();
-
-				// Update UI
-				if (panel != null) {
-					panel.updateChessBoard();
-				}
+				saveMove(currentGame);
 
 				// Notify about the move
 				clientThread.invoke(() ->
 						client.addChatMessage(ChatMessageType.GAMEMESSAGE,
 						"",
-						"Chess Game: Opponent moved from " + fromSquare + " to " + toSquare + ". Your turn!",
+						"Chess Game: " + currentGame.getOpponentName() + " moved from " + fromSquare + " to " + toSquare + ". Your turn!",
 						null));
 
 				// Check if game is over
-				if (currentGame.isGameOver()) {
-					String winner = currentGame.getWinner();
-					if (winner.equals("Draw")) {
-						clientThread.invoke(() ->
-								client.addChatMessage(ChatMessageType.GAMEMESSAGE,
-								"",
-								"Chess Game: Game ended in a draw!",
-								null));
-					} else {
-						clientThread.invoke(() ->
-								client.addChatMessage(ChatMessageType.GAMEMESSAGE,
-								"",
-								"Chess Game: " + winner + " wins!",
-								null));
-					}
-				}
+				notifyIfGameOver(currentGame);
 			} else {
 				// Invalid move received
 				clientThread.invoke(() ->
@@ -466,40 +917,245 @@ public class ChessPlugin extends Plugin
 						"Chess Game: Received invalid move from opponent! Board may be out of sync.",
 						null));
 			}
+
+			return moveSuccessful;
 		} catch (Exception e) {
 			log.error("Failed to process move message", e);
+			return false;
 		}
 	}
 
-	public void resignGame() {
-		if (currentGame == null || currentGame.getOpponentName() == null) {
+	private void processDrawOffer(ChessGame currentGame) {
+		if (currentGame.isGameOver()) {
 			return;
 		}
 
-		String resignMessage = "CHESS:" + currentGame.getGameId() + ":RESIGN";
+		// An offer crossing ours means the opponent accepted
+		if (currentGame.isDrawOfferedByPlayer()) {
+			currentGame.endGame("Draw");
+			saveGame(currentGame);
 
-		// Copy to clipboard
-		Toolkit.getDefaultToolkit()
-				.getSystemClipboard()
-				.setContents(new StringSelection(resignMessage), null);
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: " + currentGame.getOpponentName() + " accepted your draw offer.",
+					null));
+			notifyIfGameOver(currentGame);
+			return;
+		}
 
+		currentGame.setDrawOfferedByOpponent(true);
 		clientThread.invoke(() ->
 				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
 				"",
-				"Chess Game: Resignation message copied to clipboard. Please send it to " +
-						currentGame.getOpponentName() + " via private message.",
+				"Chess Game: " + currentGame.getOpponentName() + " offers a draw. Click Offer Draw to accept.",
+				null));
+	}
+
+	/**
+	 * Handles the opponent asking to take moves back, or agreeing to our own request
+	 */
+	private void processTakeback(ChessGame currentGame, int takebackValue) {
+		int ply = ChessWireFormat.unwrapPly(ChessWireFormat.syncPly(takebackValue), currentGame.getPlyCount());
+		if (currentGame.isGameOver() || ply >= currentGame.getPlyCount()
+				|| !matchesSyncHash(currentGame.getPositionHash(ply), takebackValue)) {
+			log.debug("Ignoring takeback to ply {} in game {} at ply {}", ply, currentGame.getGameId(), currentGame.getPlyCount());
+			return;
+		}
+
+		// A request for the ply we asked for means the opponent agreed
+		if (currentGame.getTakebackRequestedByPlayer() == ply) {
+			applyTakeback(currentGame, ply);
+			return;
+		}
+
+		currentGame.setTakebackRequestedByOpponent(ply);
+		clientThread.invoke(() ->
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+				"",
+				"Chess Game: " + currentGame.getOpponentName() + " asks to take back their last move. Click Takeback to accept.",
+				null));
+	}
+
+	/**
+	 * Asks to take back the player's last move in the current game, or accepts the opponent's open request
+	 */
+	public void requestTakeback() {
+		ChessGame currentGame = getCurrentGame();
+		if (currentGame != null) {
+			submit(currentGame, this::requestTakeback);
+		}
+	}
+
+	private void requestTakeback(ChessGame currentGame) {
+		if (currentGame.isGameOver() || currentGame.getOpponentName() == null) {
+			return;
+		}
+
+		int opponentPly = currentGame.getTakebackRequestedByOpponent();
+		if (opponentPly != ChessGame.NO_TAKEBACK) {
+			if (currentGame.getPlyCount() - opponentPly > currentGame.getUndoablePlies()) {
+				clientThread.invoke(() ->
+						client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+						"",
+						"Chess Game: Those moves were played before the game was reloaded and can't be taken back.",
+						null));
+				return;
+			}
+
+			// Agree by sending the same request back, then take the moves back here
+			sendToOpponent(currentGame,
+					new ChessWireFormat.Batch(currentGame.getGameId())
+							.takeback(opponentPly, currentGame.getPositionHash(opponentPly)),
+					"Takeback acceptance");
+			applyTakeback(currentGame, opponentPly);
+			return;
+		}
+
+		// The player's last move, plus the opponent's reply if it has already been played
+		int plyCount = currentGame.getPlyCount();
+		int ply = plyCount - (currentGame.isPlayerTurn() ? 2 : 1);
+		if (ply < 0 || plyCount - ply > currentGame.getUndoablePlies()) {
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: There is no move of yours that can be taken back.",
+					null));
+			return;
+		}
+
+		currentGame.setTakebackRequestedByPlayer(ply);
+		sendToOpponent(currentGame,
+				new ChessWireFormat.Batch(currentGame.getGameId())
+						.takeback(ply, currentGame.getPositionHash(ply)),
+				"Takeback request");
+	}
+
+	private void applyTakeback(ChessGame currentGame, int ply) {
+		int plies = currentGame.getPlyCount() - ply;
+		if (!currentGame.takeBack(ply)) {
+			log.warn("Game {} can't take back to ply {}", currentGame.getGameId(), ply);
+			requestResync(currentGame);
+			return;
+		}
+
+		// The journal holds the moves that were taken back
+		persistenceWriter.replaceGame(currentGame);
+
+		clientThread.invoke(() ->
+				client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+				"",
+				"Chess Game: " + (plies == 1 ? "The last move was" : "The last " + plies + " moves were") + " taken back.",
 				null));
+	}
+
+	/**
+	 * Offers a draw in the current game, or accepts the opponent's open offer
+	 */
+	public void offerDraw() {
+		ChessGame currentGame = getCurrentGame();
+		if (currentGame != null) {
+			submit(currentGame, this::offerDraw);
+		}
+	}
+
+	private void offerDraw(ChessGame currentGame) {
+		if (currentGame.isGameOver() || currentGame.getOpponentName() == null) {
+			return;
+		}
+
+		ChessWireFormat.Batch batch = new ChessWireFormat.Batch(currentGame.getGameId()).drawOffer();
+
+		if (currentGame.isDrawOfferedByOpponent()) {
+			// Accept the opponent's offer
+			sendToOpponent(currentGame, batch, "Draw acceptance");
+			currentGame.endGame("Draw");
+			saveGame(currentGame);
+			notifyIfGameOver(currentGame);
+		} else if (currentGame.isPlayerTurn()) {
+			// Batch the offer with our next move instead of sending a separate message
+			pendingDrawOffers.add(currentGame.getGameId());
+			clientThread.invoke(() ->
+					client.addChatMessage(ChatMessageType.GAMEMESSAGE,
+					"",
+					"Chess Game: Your draw offer will be sent with your next move.",
+					null));
+		} else {
+			currentGame.setDrawOfferedByPlayer(true);
+			sendToOpponent(currentGame, batch, "Draw offer");
+		}
+	}
+
+	public void resignGame() {
+		ChessGame currentGame = getCurrentGame();
+		if (currentGame == null || currentGame.getOpponentName() == null) {
+			return;
+		}
+
+		submit(currentGame, game -> {
+			sendToOpponent(game,
+					new ChessWireFormat.Batch(game.getGameId()).resign(),
+					"Resignation message");
 
-		// End the game locally
+			// End the game locally, recording the opponent as the winner for the archive
+			if (!game.isGameOver()) {
+				game.endGame(game.isPlayingAsWhite() ? "Black" : "White");
+			}
+		});
 		resetGame();
 	}
 
+	@Subscribe
+	public void onConfigChanged(ConfigChanged event) {
+		if (ChessConfig.GROUP.equals(event.getGroup()) && event.getKey().startsWith("engine")) {
+			searchEngine.configure(config.engineThreads(), config.engineHashSize());
+		} else if (ChessConfig.GROUP.equals(event.getGroup()) && event.getKey().equals("openingBookPath")) {
+			loadOpeningBook();
+		} else if (ChessConfig.GROUP.equals(event.getGroup()) && event.getKey().equals("metricsEnabled")) {
+			Metrics.setEnabled(config.metricsEnabled());
+			SwingUtilities.invokeLater(() -> panel.setMetricsVisible(config.metricsEnabled()));
+		}
+	}
+
+	/**
+	 * Maps the configured opening book, closing the one it replaces; only the pages touched by lookups are ever read
+	 */
+	private void loadOpeningBook() {
+		closeOpeningBook();
+
+		String bookPath = config.openingBookPath().trim();
+		if (bookPath.isEmpty()) {
+			return;
+		}
+
+		try {
+			openingBook = OpeningBook.open(Paths.get(bookPath));
+			log.info("Opened opening book {} with {} entries", bookPath, openingBook.size());
+		} catch (IOException | InvalidPathException e) {
+			log.warn("Could not open opening book {}", bookPath, e);
+		}
+	}
+
+	private void closeOpeningBook() {
+		OpeningBook book = openingBook;
+		openingBook = null;
+		if (book == null) {
+			return;
+		}
+
+		try {
+			book.close();
+		} catch (IOException e) {
+			log.warn("Could not close opening book {}", book.getPath(), e);
+		}
+	}
+
 	@Subscribe
 	public void onGameStateChanged(GameStateChanged event) {
 		if (event.getGameState() == GameState.LOGGED_IN) {
 			// Check if there's a saved game
-			String currentGameId = config.currentGameId();
-			if (currentGameId != null && !currentGameId.isEmpty() && currentGame == null) {
+			String gameIds = config.gameIds();
+			if (gameIds != null && !gameIds.isEmpty() && gameRegistry.isEmpty()) {
 				clientThread.invokeLater(() -> {
 					client.addChatMessage(
 							ChatMessageType.GAMEMESSAGE,
@@ -0,0 +1,403 @@
+package com.chess;
+
+/**
+ * Compact, versioned chat encoding. One line carries a game ID and a batch of
+ * control records, so several updates share a single private message:
+ * <pre>
+ * CHX1:&lt;gameId&gt;:&lt;record&gt;&lt;record&gt;...
+ * </pre>
+ * Each record is a tag char followed by a fixed number of payload chars from a
+ * 64-char chat-safe alphabet:
+ * <ul>
+ * <li>{@code M} + 3 chars: a move as a 16-bit PackedMove</li>
+ * <li>{@code A} + 2 chars: acknowledges the opponent's move at the given ply</li>
+ * <li>{@code C} + 4 chars: remaining clock time in seconds</li>
+ * <li>{@code D}: offers a draw, or accepts the opponent's offer</li>
+ * <li>{@code J}: joined the game</li>
+ * <li>{@code R}: resigned</li>
+ * <li>{@code S} + 5 chars: the sender's ply count and position hash after the batch's moves</li>
+ * <li>{@code Q} + 5 chars: asks for the moves after the given ply and position hash</li>
+ * <li>{@code T} + 5 chars: asks to take moves back to the given ply and position hash, or
+ * agrees to the opponent's request for the same ply</li>
+ * <li>{@code F} + the rest of the line: the sender's position, bit-packed; always the last record</li>
+ * </ul>
+ * Plies are sent modulo 4096 and hashes are the top 18 bits of the position's Zobrist key.
+ * A packed position is a 64-bit occupancy mask in FEN square order, 4 bits per occupied
+ * square indexing {@code PNBRQKpnbrqk}, then 1 bit side to move, 4 castling bits (KQkq),
+ * 4 bits en passant file + 1 and 8 bits halfmove clock, so any position takes at most
+ * 35 chars and a line stays under the 80-char private message limit.
+ * The old CHESS: format is still accepted by ChessMessageParser.
+ */
+public final class ChessWireFormat {
+    public static final String PREFIX = "CHX";
+    public static final char VERSION = '1';
+
+    public static final char TAG_MOVE = 'M';
+    public static final char TAG_ACK = 'A';
+    public static final char TAG_CLOCK = 'C';
+    public static final char TAG_DRAW_OFFER = 'D';
+    public static final char TAG_JOIN = 'J';
+    public static final char TAG_RESIGN = 'R';
+    public static final char TAG_SYNC = 'S';
+    public static final char TAG_RESYNC = 'Q';
+    public static final char TAG_POSITION = 'F';
+    public static final char TAG_TAKEBACK = 'T';
+
+    /** Longest line a private message can carry */
+    public static final int MAX_LINE_LENGTH = 80;
+
+    // Payload chars per record type; 6 bits per char
+    static final int MOVE_CHARS = 3;
+    static final int ACK_CHARS = 2;
+    static final int CLOCK_CHARS = 4;
+    static final int SYNC_CHARS = 5;
+
+    // Sync payload: ply in the top 12 bits, position hash in the low 18
+    private static final int PLY_MASK = 0xFFF;
+    private static final int HASH_BITS = 18;
+    private static final int HASH_MASK = (1 << HASH_BITS) - 1;
+
+    private static final String PIECES = "PNBRQKpnbrqk";
+    private static final String CASTLING = "KQkq";
+    private static final int HALFMOVE_MAX = 0xFF;
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz-_";
+
+    // Alphabet index per ASCII char, -1 for chars outside the alphabet
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            DECODE[ALPHABET.charAt(i)] = (byte) i;
+        }
+    }
+
+    private ChessWireFormat() {
+    }
+
+    /**
+     * Decodes a fixed-width payload value at the given position, or returns -1 if a char is not in the alphabet
+     */
+    static int decode(CharSequence text, int pos, int chars) {
+        int value = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = text.charAt(pos + i);
+            int digit = c < 128 ? DECODE[c] : -1;
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 6) | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Short form of a position hash, as carried by sync records
+     */
+    public static int shortHash(long hash) {
+        return (int) (hash >>> (64 - HASH_BITS));
+    }
+
+    public static int syncPly(int value) {
+        return value >>> HASH_BITS;
+    }
+
+    public static int syncHash(int value) {
+        return value & HASH_MASK;
+    }
+
+    /**
+     * Restores a ply sent modulo 4096, picking the value closest to a known ply
+     */
+    public static int unwrapPly(int wrapped, int reference) {
+        int ply = (reference & ~PLY_MASK) | wrapped;
+        if (ply > reference + PLY_MASK / 2) {
+            ply -= PLY_MASK + 1;
+        } else if (ply < reference - PLY_MASK / 2) {
+            ply += PLY_MASK + 1;
+        }
+        return Math.max(0, ply);
+    }
+
+    private static int syncValue(int ply, long hash) {
+        return ((ply & PLY_MASK) << HASH_BITS) | shortHash(hash);
+    }
+
+    private static void encode(StringBuilder sb, int value, int chars) {
+        for (int i = chars - 1; i >= 0; i--) {
+            sb.append(ALPHABET.charAt((value >> (i * 6)) & 0x3F));
+        }
+    }
+
+    /**
+     * Packs a FEN's first five fields, everything but the move number
+     */
+    static void encodePosition(StringBuilder sb, String fen) {
+        String[] fields = fen.trim().split(" +");
+        if (fields.length < 5) {
+            throw new IllegalArgumentException("Incomplete FEN: " + fen);
+        }
+
+        long occupied = 0;
+        int[] pieces = new int[64];
+        int pieceCount = 0;
+        int square = 0;
+        for (int i = 0; i < fields[0].length(); i++) {
+            char c = fields[0].charAt(i);
+            if (c == '/') {
+                continue;
+            }
+            if (c >= '1' && c <= '8') {
+                square += c - '0';
+                continue;
+            }
+            int piece = PIECES.indexOf(c);
+            if (piece < 0 || square >= 64) {
+                throw new IllegalArgumentException("Bad FEN board: " + fen);
+            }
+            occupied |= 1L << square++;
+            pieces[pieceCount++] = piece;
+        }
+        if (square != 64) {
+            throw new IllegalArgumentException("Bad FEN board: " + fen);
+        }
+
+        int castling = 0;
+        for (int i = 0; i < CASTLING.length(); i++) {
+            if (fields[2].indexOf(CASTLING.charAt(i)) >= 0) {
+                castling |= 8 >> i;
+            }
+        }
+
+        BitWriter out = new BitWriter(sb);
+        out.write((int) (occupied >>> 32), 32);
+        out.write((int) occupied, 32);
+        for (int i = 0; i < pieceCount; i++) {
+            out.write(pieces[i], 4);
+        }
+        out.write(fields[1].equals("b") ? 1 : 0, 1);
+        out.write(castling, 4);
+        out.write(fields[3].equals("-") ? 0 : fields[3].charAt(0) - 'a' + 1, 4);
+        out.write(Math.min(Integer.parseInt(fields[4]), HALFMOVE_MAX), 8);
+        out.flush();
+    }
+
+    /**
+     * Unpacks a position into a FEN without its move number, or returns null if it is malformed
+     */
+    static String decodePosition(CharSequence text, int start, int end) {
+        BitReader in = new BitReader(text, start, end);
+        long occupied = ((long) in.read(32) << 32) | (in.read(32) & 0xFFFFFFFFL);
+
+        StringBuilder fen = new StringBuilder(80);
+        int empty = 0;
+        for (int square = 0; square < 64; square++) {
+            if ((occupied & (1L << square)) != 0) {
+                int piece = in.read(4);
+                if (piece < 0 || piece >= PIECES.length()) {
+                    return null;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(PIECES.charAt(piece));
+            } else {
+                empty++;
+            }
+            if (square % 8 == 7) {
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                if (square < 63) {
+                    fen.append('/');
+                }
+            }
+        }
+
+        boolean black = in.read(1) == 1;
+        int castling = in.read(4);
+        int enPassantFile = in.read(4);
+        int halfmoves = in.read(8);
+        if (!in.isComplete() || enPassantFile > 8) {
+            return null;
+        }
+
+        fen.append(black ? " b " : " w ");
+        if (castling == 0) {
+            fen.append('-');
+        }
+        for (int i = 0; i < CASTLING.length(); i++) {
+            if ((castling & (8 >> i)) != 0) {
+                fen.append(CASTLING.charAt(i));
+            }
+        }
+        fen.append(' ');
+        if (enPassantFile == 0) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + enPassantFile - 1)).append(black ? '3' : '6');
+        }
+        return fen.append(' ').append(halfmoves).toString();
+    }
+
+    /**
+     * Writes bits most significant first, 6 per alphabet char
+     */
+    private static final class BitWriter {
+        private final StringBuilder sb;
+        private int buffer;
+        private int bits;
+
+        BitWriter(StringBuilder sb) {
+            this.sb = sb;
+        }
+
+        void write(int value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                buffer = (buffer << 1) | ((value >>> i) & 1);
+                if (++bits == 6) {
+                    sb.append(ALPHABET.charAt(buffer));
+                    buffer = 0;
+                    bits = 0;
+                }
+            }
+        }
+
+        /** Pads the last char with zero bits */
+        void flush() {
+            if (bits > 0) {
+                write(0, 6 - bits);
+            }
+        }
+    }
+
+    /**
+     * Reads bits written by BitWriter; a read past the end or of a char outside the alphabet fails the reader
+     */
+    private static final class BitReader {
+        private final CharSequence text;
+        private final int end;
+        private int pos;
+        private int buffer;
+        private int bits;
+        private boolean failed;
+
+        BitReader(CharSequence text, int start, int end) {
+            this.text = text;
+            this.pos = start;
+            this.end = end;
+        }
+
+        /** Returns the next bits, or -1 once the reader has failed */
+        int read(int count) {
+            int value = 0;
+            for (int i = 0; i < count && !failed; i++) {
+                if (bits == 0) {
+                    if (pos == end) {
+                        failed = true;
+                        break;
+                    }
+                    buffer = decode(text, pos++, 1);
+                    bits = 6;
+                    failed = buffer < 0;
+                }
+                value = (value << 1) | ((buffer >>> --bits) & 1);
+            }
+            return failed ? -1 : value;
+        }
+
+        /** True if every read succeeded and only padding is left */
+        boolean isComplete() {
+            return !failed && pos == end;
+        }
+    }
+
+    /**
+     * Builds one chat line holding several records for a game
+     */
+    public static final class Batch {
+        private final StringBuilder sb = new StringBuilder(32);
+        private final int headerLength;
+
+        public Batch(String gameId) {
+            sb.append(PREFIX).append(VERSION).append(':').append(gameId).append(':');
+            headerLength = sb.length();
+        }
+
+        public Batch move(short move) {
+            sb.append(TAG_MOVE);
+            encode(sb, move & 0xFFFF, MOVE_CHARS);
+            return this;
+        }
+
+        public Batch ack(int ply) {
+            sb.append(TAG_ACK);
+            encode(sb, ply, ACK_CHARS);
+            return this;
+        }
+
+        public Batch clock(int seconds) {
+            sb.append(TAG_CLOCK);
+            encode(sb, seconds, CLOCK_CHARS);
+            return this;
+        }
+
+        public Batch drawOffer() {
+            sb.append(TAG_DRAW_OFFER);
+            return this;
+        }
+
+        public Batch join() {
+            sb.append(TAG_JOIN);
+            return this;
+        }
+
+        public Batch resign() {
+            sb.append(TAG_RESIGN);
+            return this;
+        }
+
+        public Batch sync(int ply, long hash) {
+            sb.append(TAG_SYNC);
+            encode(sb, syncValue(ply, hash), SYNC_CHARS);
+            return this;
+        }
+
+        public Batch resync(int ply, long hash) {
+            sb.append(TAG_RESYNC);
+            encode(sb, syncValue(ply, hash), SYNC_CHARS);
+            return this;
+        }
+
+        public Batch takeback(int ply, long hash) {
+            sb.append(TAG_TAKEBACK);
+            encode(sb, syncValue(ply, hash), SYNC_CHARS);
+            return this;
+        }
+
+        /**
+         * Appends the position of a FEN, leaving out its move number; nothing may follow it
+         */
+        public Batch position(String fen) {
+            sb.append(TAG_POSITION);
+            encodePosition(sb, fen);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return sb.length() == headerLength;
+        }
+
+        public int length() {
+            return sb.length();
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.chess;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.Side;
+
+/**
+ * Static evaluation: material plus piece-square tables, tapered between middlegame
+ * and endgame by the material left on the board. Scores are in centipawns.
+ */
+public final class Evaluator {
+    public static final int MATE = 30000;
+    public static final int INFINITY = 32000;
+
+    // Material by piece type: pawn, knight, bishop, rook, queen, king
+    private static final int[] TYPE_VALUES = {100, 320, 330, 500, 900, 0};
+
+    // Game phase weight by piece type; 24 at the start of the game
+    private static final int[] PHASE_WEIGHTS = {0, 1, 1, 2, 4, 0};
+    private static final int MAX_PHASE = 24;
+
+    // Piece-square tables from white's point of view, written with rank 8 on the first row
+    private static final int[] PAWN_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private static final int[] KNIGHT_TABLE = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+    };
+
+    private static final int[] BISHOP_TABLE = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+    };
+
+    private static final int[] ROOK_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0
+    };
+
+    private static final int[] QUEEN_TABLE = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20
+    };
+
+    private static final int[] KING_MIDDLEGAME_TABLE = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20
+    };
+
+    private static final int[] KING_ENDGAME_TABLE = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50
+    };
+
+    // Chess library pieces in ordinal order, excluding NONE
+    static final Piece[] PIECES = new Piece[12];
+
+    // Material plus position for white, negated for black, by piece ordinal and square
+    private static final int[][] MIDDLEGAME = new int[12][64];
+    private static final int[][] ENDGAME = new int[12][64];
+
+    static {
+        int[][] tables = {PAWN_TABLE, KNIGHT_TABLE, BISHOP_TABLE, ROOK_TABLE, QUEEN_TABLE, KING_MIDDLEGAME_TABLE};
+
+        for (int piece = 0; piece < 12; piece++) {
+            PIECES[piece] = Piece.values()[piece];
+            int type = piece % 6;
+            boolean white = piece < 6;
+
+            for (int square = 0; square < 64; square++) {
+                // Tables start at A8, so white reads them with the rank flipped and black as written
+                int rank = square >> 3;
+                int file = square & 7;
+                int tableIndex = white ? (7 - rank) * 8 + file : rank * 8 + file;
+                int sign = white ? 1 : -1;
+
+                MIDDLEGAME[piece][square] = sign * (TYPE_VALUES[type] + tables[type][tableIndex]);
+                ENDGAME[piece][square] = sign * (TYPE_VALUES[type]
+                        + (type == 5 ? KING_ENDGAME_TABLE[tableIndex] : tables[type][tableIndex]));
+            }
+        }
+    }
+
+    private Evaluator() {
+    }
+
+    /**
+     * Evaluates the position from the point of view of the side to move
+     */
+    public static int evaluate(Board board) {
+        int middlegame = 0;
+        int endgame = 0;
+        int phase = 0;
+
+        for (int piece = 0; piece < 12; piece++) {
+            long bitboard = board.getBitboard(PIECES[piece]);
+            phase += PHASE_WEIGHTS[piece % 6] * Long.bitCount(bitboard);
+
+            while (bitboard != 0) {
+                int square = Long.numberOfTrailingZeros(bitboard);
+                middlegame += MIDDLEGAME[piece][square];
+                endgame += ENDGAME[piece][square];
+                bitboard &= bitboard - 1;
+            }
+        }
+
+        phase = Math.min(phase, MAX_PHASE);
+        int score = (middlegame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+        return board.getSideToMove() == Side.WHITE ? score : -score;
+    }
+
+    /**
+     * Material value of a piece, used to order captures
+     */
+    public static int pieceValue(Piece piece) {
+        if (piece == null || piece == Piece.NONE) {
+            return 0;
+        }
+        int type = piece.ordinal() % 6;
+        return type == 5 ? 10000 : TYPE_VALUES[type];
+    }
+}
@@ -0,0 +1,433 @@
+package com.chess;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Local store of finished games. Full records are appended to a data file, and a
+ * memory-mapped index of fixed-size entries holds what is needed to list and find
+ * games (opponent, finish time, result, game ID hash) without touching the data
+ * file. Only a game that is opened is read back and decoded.
+ *
+ * <p>Index layout: a 16-byte header (magic, version, entry count) followed by
+ * 64-byte entries; entries are appended in the order games finished.</p>
+ */
+@Slf4j
+public class GameArchive {
+    public static final int RESULT_UNFINISHED = 0;
+    public static final int RESULT_WHITE_WON = 1;
+    public static final int RESULT_BLACK_WON = 2;
+    public static final int RESULT_DRAW = 3;
+
+    private static final int MAGIC = 0x43484958; // "CHIX"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 8;
+
+    // Index entry layout
+    private static final int ENTRY_BYTES = 64;
+    private static final int DATA_OFFSET = 0;
+    private static final int DATA_LENGTH = 8;
+    private static final int FINISHED_AT = 12;
+    private static final int GAME_ID_HASH = 20;
+    private static final int OPPONENT_HASH = 24;
+    private static final int PLY_COUNT = 28;
+    private static final int RESULT = 30;
+    private static final int FLAGS = 31;
+    private static final int OPPONENT_NAME = 32;
+    private static final int OPPONENT_NAME_BYTES = ENTRY_BYTES - OPPONENT_NAME;
+
+    private static final int FLAG_PLAYING_AS_WHITE = 1;
+
+    // Entries mapped at a time; the mapping grows by this much when full
+    private static final int MAP_CHUNK_ENTRIES = 1024;
+
+    private final Path directory;
+
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int count;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    // Called on the writing thread after a game is archived
+    @Setter
+    private Runnable appendListener;
+
+    public GameArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Summary of an archived game, read from the index alone
+     */
+    public static final class Entry {
+        @Getter
+        private final int index;
+
+        @Getter
+        private final long finishedAt;
+
+        @Getter
+        private final int plyCount;
+
+        @Getter
+        private final int result;
+
+        @Getter
+        private final boolean playingAsWhite;
+
+        @Getter
+        private final String opponentName;
+
+        private Entry(int index, long finishedAt, int plyCount, int result, boolean playingAsWhite, String opponentName) {
+            this.index = index;
+            this.finishedAt = finishedAt;
+            this.plyCount = plyCount;
+            this.result = result;
+            this.playingAsWhite = playingAsWhite;
+            this.opponentName = opponentName;
+        }
+
+        public boolean isWon() {
+            return result == (playingAsWhite ? RESULT_WHITE_WON : RESULT_BLACK_WON);
+        }
+
+        public boolean isLost() {
+            return result == (playingAsWhite ? RESULT_BLACK_WON : RESULT_WHITE_WON);
+        }
+    }
+
+    /**
+     * A complete archived game, decoded from the data file
+     */
+    public static final class Record {
+        @Getter
+        private final String gameId;
+
+        @Getter
+        private final String opponentName;
+
+        @Getter
+        private final long finishedAt;
+
+        @Getter
+        private final int result;
+
+        @Getter
+        private final boolean playingAsWhite;
+
+        // Final position, in ChessGame's serialized form
+        @Getter
+        private final String serialized;
+
+        // One PackedMove per ply; NONE where the move is not known
+        @Getter
+        private final short[] moves;
+
+        private Record(String gameId, String opponentName, long finishedAt, int result,
+                       boolean playingAsWhite, String serialized, short[] moves) {
+            this.gameId = gameId;
+            this.opponentName = opponentName;
+            this.finishedAt = finishedAt;
+            this.result = result;
+            this.playingAsWhite = playingAsWhite;
+            this.serialized = serialized;
+            this.moves = moves;
+        }
+
+        /**
+         * Captures a game for archiving; must run on the thread that plays its moves
+         */
+        public static Record of(ChessGame game, long finishedAt) {
+            String opponentName = game.getOpponentName() != null ? game.getOpponentName() : "";
+            return new Record(game.getGameId(), opponentName, finishedAt, resultOf(game),
+                    game.isPlayingAsWhite(), game.serialize(), game.getMoveHistory());
+        }
+
+        private byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + moves.length * 2);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(gameId);
+            out.writeUTF(opponentName);
+            out.writeLong(finishedAt);
+            out.writeByte(result);
+            out.writeBoolean(playingAsWhite);
+            out.writeUTF(serialized);
+            out.writeInt(moves.length);
+            for (short move : moves) {
+                out.writeShort(move);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static Record decode(byte[] data) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            String gameId = in.readUTF();
+            String opponentName = in.readUTF();
+            long finishedAt = in.readLong();
+            int result = in.readByte();
+            boolean playingAsWhite = in.readBoolean();
+            String serialized = in.readUTF();
+            short[] moves = new short[in.readInt()];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = in.readShort();
+            }
+            return new Record(gameId, opponentName, finishedAt, result, playingAsWhite, serialized, moves);
+        }
+    }
+
+    private static int resultOf(ChessGame game) {
+        if (!game.isGameOver() || game.getWinner() == null) {
+            return RESULT_UNFINISHED;
+        }
+
+        switch (game.getWinner()) {
+            case "White":
+                return RESULT_WHITE_WON;
+            case "Black":
+                return RESULT_BLACK_WON;
+            default:
+                return RESULT_DRAW;
+        }
+    }
+
+    /**
+     * Opens the archive files on first use; returns false if the archive is unavailable
+     */
+    private boolean ensureOpen() {
+        if (index != null) {
+            return true;
+        }
+        if (failed || closed) {
+            return false;
+        }
+
+        try {
+            Files.createDirectories(directory);
+            dataChannel = FileChannel.open(directory.resolve("archive.dat"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            indexChannel = FileChannel.open(directory.resolve("archive.idx"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            boolean created = indexChannel.size() == 0;
+            map(Math.max(MAP_CHUNK_ENTRIES, entriesInFile()));
+
+            if (created) {
+                index.putInt(0, MAGIC);
+                index.putInt(4, VERSION);
+                index.putInt(COUNT_OFFSET, 0);
+            } else if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+                throw new IOException("Unrecognized archive index");
+            }
+
+            count = index.getInt(COUNT_OFFSET);
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to open game archive", e);
+            failed = true;
+            close();
+            return false;
+        }
+    }
+
+    private int entriesInFile() throws IOException {
+        return (int) ((indexChannel.size() - HEADER_BYTES) / ENTRY_BYTES);
+    }
+
+    private void map(int capacity) throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+    }
+
+    /**
+     * Appends a finished game to the archive
+     */
+    public synchronized void append(Record record) throws IOException {
+        if (!ensureOpen()) {
+            throw new IOException("Game archive is unavailable");
+        }
+
+        byte[] data = record.encode();
+        long offset = dataChannel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            dataChannel.write(buffer, offset + buffer.position());
+        }
+
+        int entryOffset = HEADER_BYTES + count * ENTRY_BYTES;
+        if (entryOffset + ENTRY_BYTES > index.capacity()) {
+            map(count + MAP_CHUNK_ENTRIES);
+        }
+
+        index.putLong(entryOffset + DATA_OFFSET, offset);
+        index.putInt(entryOffset + DATA_LENGTH, data.length);
+        index.putLong(entryOffset + FINISHED_AT, record.finishedAt);
+        index.putInt(entryOffset + GAME_ID_HASH, record.gameId.hashCode());
+        index.putInt(entryOffset + OPPONENT_HASH, GameRegistry.normalizeName(record.opponentName).hashCode());
+        index.putShort(entryOffset + PLY_COUNT, (short) Math.min(record.moves.length, Short.MAX_VALUE));
+        index.put(entryOffset + RESULT, (byte) record.result);
+        index.put(entryOffset + FLAGS, (byte) (record.playingAsWhite ? FLAG_PLAYING_AS_WHITE : 0));
+
+        byte[] name = truncatedName(record.opponentName);
+        for (int i = 0; i < OPPONENT_NAME_BYTES; i++) {
+            index.put(entryOffset + OPPONENT_NAME + i, i < name.length ? name[i] : 0);
+        }
+
+        // Publish the entry only once it is complete
+        count++;
+        index.putInt(COUNT_OFFSET, count);
+
+        Runnable listener = appendListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * The opponent name as UTF-8, cut at a char boundary to fit its index field
+     */
+    private static byte[] truncatedName(String name) {
+        String truncated = name;
+        byte[] bytes = truncated.getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > OPPONENT_NAME_BYTES) {
+            truncated = truncated.substring(0, truncated.length() - 1);
+            bytes = truncated.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return ensureOpen() ? count : 0;
+    }
+
+    /**
+     * Reads the summary of the archived game at the given position, oldest first
+     */
+    public synchronized Entry getEntry(int position) {
+        if (!ensureOpen() || position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("No archived game at " + position);
+        }
+
+        int entryOffset = HEADER_BYTES + position * ENTRY_BYTES;
+        return new Entry(position,
+                index.getLong(entryOffset + FINISHED_AT),
+                index.getShort(entryOffset + PLY_COUNT),
+                index.get(entryOffset + RESULT),
+                (index.get(entryOffset + FLAGS) & FLAG_PLAYING_AS_WHITE) != 0,
+                readOpponentName(entryOffset));
+    }
+
+    private String readOpponentName(int entryOffset) {
+        byte[] name = new byte[OPPONENT_NAME_BYTES];
+        int nameLength = 0;
+        while (nameLength < OPPONENT_NAME_BYTES && index.get(entryOffset + OPPONENT_NAME + nameLength) != 0) {
+            name[nameLength] = index.get(entryOffset + OPPONENT_NAME + nameLength);
+            nameLength++;
+        }
+        return new String(name, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Positions of the games played against an opponent, oldest first. Entries are matched by
+     * the hash in the index and confirmed against the stored name, so the data file isn't read.
+     */
+    public synchronized int[] findByOpponent(String opponentName) {
+        if (!ensureOpen()) {
+            return new int[0];
+        }
+
+        String normalized = GameRegistry.normalizeName(opponentName);
+        int hash = normalized.hashCode();
+
+        // The stored name may have been cut to fit its field
+        String stored = GameRegistry.normalizeName(new String(truncatedName(opponentName), StandardCharsets.UTF_8));
+
+        int[] matches = new int[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int entryOffset = HEADER_BYTES + i * ENTRY_BYTES;
+            if (index.getInt(entryOffset + OPPONENT_HASH) == hash
+                    && GameRegistry.normalizeName(readOpponentName(entryOffset)).equals(stored)) {
+                matches[found++] = i;
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    /**
+     * Position of the most recently archived game with the given ID, or -1. Only entries whose
+     * index hash matches are read back, to confirm the ID.
+     */
+    public synchronized int findByGameId(String gameId) throws IOException {
+        if (!ensureOpen()) {
+            return -1;
+        }
+
+        int hash = gameId.hashCode();
+        for (int i = count - 1; i >= 0; i--) {
+            if (index.getInt(HEADER_BYTES + i * ENTRY_BYTES + GAME_ID_HASH) == hash && open(i).getGameId().equals(gameId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads and decodes the full record of the archived game at the given position
+     */
+    public synchronized Record open(int position) throws IOException {
+        if (!ensureOpen() || position < 0 || position >= count) {
+            throw new IndexOutOfBoundsException("No archived game at " + position);
+        }
+
+        int entryOffset = HEADER_BYTES + position * ENTRY_BYTES;
+        long offset = index.getLong(entryOffset + DATA_OFFSET);
+        int length = index.getInt(entryOffset + DATA_LENGTH);
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (dataChannel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Archived game " + position + " is truncated");
+            }
+        }
+        return Record.decode(buffer.array());
+    }
+
+    /**
+     * Closes the archive files for good; later calls behave as if the archive were unavailable
+     */
+    public synchronized void close() {
+        closed = true;
+        try {
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+            if (indexChannel != null) {
+                indexChannel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close game archive", e);
+        }
+
+        dataChannel = null;
+        indexChannel = null;
+        index = null;
+    }
+}
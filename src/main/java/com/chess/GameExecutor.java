@@ -0,0 +1,205 @@
+package com.chess;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs every change to a game as a command on that game's own mailbox, so a ChessGame is
+ * only ever touched by one thread at a time and the Swing and client threads just enqueue.
+ * Mailboxes are drained on a small shared pool; each game runs its commands in the order
+ * they were submitted, while different games can run side by side.
+ *
+ * <p>After a batch of commands that changed the game's {@link BoardSnapshot}, the publish
+ * listener is called on the game's thread with the snapshot it last saw, so the UI can
+ * work out what to redraw from the new one. Commands
+ * that only read the game, like looking up its FEN for a hint, publish nothing.</p>
+ */
+@Slf4j
+public class GameExecutor {
+    // Commands a game may have waiting; a game this far behind is stuck, so more are refused
+    static final int MAILBOX_CAPACITY = 64;
+
+    private static final int THREADS = 2;
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    private final ExecutorService executor;
+    private final BiConsumer<ChessGame, BoardSnapshot> publishListener;
+    private final Map<ChessGame, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    /**
+     * A change to a game, run on the game's thread
+     */
+    @FunctionalInterface
+    public interface Command {
+        void execute(ChessGame game);
+    }
+
+    public GameExecutor(BiConsumer<ChessGame, BoardSnapshot> publishListener) {
+        this.publishListener = publishListener;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "chess-game-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a mailbox for a game; commands for a game that was never added, or has been
+     * removed, are refused
+     */
+    public void add(ChessGame game) {
+        mailboxes.putIfAbsent(game, new Mailbox(game));
+    }
+
+    /**
+     * Queues a command for the game. Returns false if it was refused because the game's
+     * mailbox is full or closed, or the executor shut down before it could be scheduled.
+     */
+    public boolean submit(ChessGame game, Command command) {
+        Mailbox mailbox = mailboxes.get(game);
+        String refusal = mailbox == null ? "no mailbox" : mailbox.offer(command);
+        if (refusal != null) {
+            Metrics.REJECTED_COMMANDS.increment();
+            log.warn("Refused a command for game {}: {}", game.getGameId(), refusal);
+            return false;
+        }
+
+        if (!mailbox.schedule()) {
+            log.warn("Dropped {} commands for game {} at shutdown", mailbox.commands.size(), game.getGameId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the game's mailbox: the commands already queued for it still run, later ones are refused
+     */
+    public void remove(ChessGame game) {
+        Mailbox mailbox = mailboxes.remove(game);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    /**
+     * Runs the commands already queued, waiting a short while for them, and refuses any more.
+     * Returns false if some were still running when the wait ran out.
+     */
+    public boolean shutDown() {
+        executor.shutdown();
+        try {
+            if (executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            log.warn("Game commands still running after {} ms", SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * One game's pending commands. At most one drain is scheduled at a time, which is what
+     * keeps the game's commands serialized.
+     */
+    private final class Mailbox implements Runnable {
+        private final ChessGame game;
+        private final BlockingQueue<Command> commands = new ArrayBlockingQueue<>(MAILBOX_CAPACITY);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // Set once the game is removed; guarded by the mailbox
+        private boolean closed;
+
+        // Last snapshot handed to the publish listener; only used on the game's thread
+        private BoardSnapshot published;
+
+        private Mailbox(ChessGame game) {
+            this.game = game;
+        }
+
+        /**
+         * Queues a command, returning why it was refused or null if it was queued
+         */
+        private synchronized String offer(Command command) {
+            if (closed) {
+                return "game removed";
+            }
+            if (executor.isShutdown()) {
+                return "shutting down";
+            }
+            return commands.offer(command) ? null : "mailbox full";
+        }
+
+        private synchronized void close() {
+            closed = true;
+        }
+
+        /**
+         * Starts a drain unless one is already scheduled; returns false if the pool refused it
+         */
+        private boolean schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return true;
+            }
+            try {
+                executor.execute(this);
+                return true;
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                return false;
+            }
+        }
+
+        @Override
+        public void run() {
+            // Commands that arrived during the drain get a drain of their own; once the pool is
+            // shutting down it refuses new drains, so this thread runs them before it finishes
+            do {
+                drain();
+                scheduled.set(false);
+            } while (!commands.isEmpty() && !schedule() && scheduled.compareAndSet(false, true));
+        }
+
+        private void drain() {
+            // Run what is queued now; commands arriving meanwhile wait for the next drain
+            for (int pending = commands.size(); pending > 0; pending--) {
+                Command command = commands.poll();
+                if (command == null) {
+                    break;
+                }
+
+                long start = Metrics.start();
+                try {
+                    command.execute(game);
+                } catch (Exception e) {
+                    log.error("Command failed for game {}", game.getGameId(), e);
+                }
+                Metrics.GAME_COMMAND.recordSince(start);
+            }
+
+            BoardSnapshot snapshot = game.getSnapshot();
+            if (snapshot != published) {
+                BoardSnapshot previous = published;
+                published = snapshot;
+                try {
+                    publishListener.accept(game, previous);
+                } catch (Exception e) {
+                    log.error("Failed to publish game {}", game.getGameId(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.chess;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only move journal, one file per game holding every move played as a
+ * 2-byte PackedMove, so record N is the move at ply N. Saving a move appends a
+ * single record instead of re-serializing the game; full snapshots are taken
+ * every SNAPSHOT_INTERVAL plies and the journal is replayed on top of them.
+ */
+@Slf4j
+public class GameJournal {
+    // Plies between full snapshots of a game
+    public static final int SNAPSHOT_INTERVAL = 16;
+
+    private static final String EXTENSION = ".journal";
+    private static final int RECORD_BYTES = 2;
+
+    private final Path directory;
+
+    public GameJournal(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Appends moves to the game's journal, which must hold exactly one record per earlier ply
+     */
+    public void append(String gameId, short[] moves, int count) throws IOException {
+        Files.createDirectories(directory);
+
+        ByteBuffer records = ByteBuffer.allocate(count * RECORD_BYTES);
+        records.asShortBuffer().put(moves, 0, count);
+
+        try (FileChannel channel = FileChannel.open(journalPath(gameId),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+        }
+    }
+
+    /**
+     * Reads back every move in the game's journal; a torn trailing record is ignored
+     */
+    public short[] read(String gameId) throws IOException {
+        Path path = journalPath(gameId);
+        if (!Files.exists(path)) {
+            return new short[0];
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        short[] moves = new short[buffer.remaining() / RECORD_BYTES];
+        buffer.asShortBuffer().get(moves);
+        return moves;
+    }
+
+    /**
+     * Replaces the game's journal with the given moves, used when it no longer matches the snapshot
+     */
+    public void write(String gameId, short[] moves) throws IOException {
+        Files.createDirectories(directory);
+
+        ByteBuffer buffer = ByteBuffer.allocate(moves.length * RECORD_BYTES);
+        buffer.asShortBuffer().put(moves);
+        Files.write(journalPath(gameId), buffer.array());
+    }
+
+    public void delete(String gameId) {
+        try {
+            Files.deleteIfExists(journalPath(gameId));
+        } catch (IOException e) {
+            log.warn("Failed to delete journal for game {}", gameId, e);
+        }
+    }
+
+    /**
+     * Replays the journal on top of a game restored from its snapshot and fills in its move history.
+     * If the journal is missing moves or holds moves that can't be played, it is rewritten to match the game.
+     */
+    public void recover(ChessGame game) throws IOException {
+        String gameId = game.getGameId();
+        short[] moves = read(gameId);
+        int snapshotPly = game.getPlyCount();
+
+        if (moves.length < snapshotPly) {
+            // Snapshot is ahead of the journal, e.g. synced from another machine; the earlier moves are unknown
+            log.warn("Journal for game {} ends at ply {} before its snapshot at ply {}", gameId, moves.length, snapshotPly);
+            game.restoreHistory(moves, moves.length);
+            write(gameId, game.getMoveHistory());
+            return;
+        }
+
+        game.restoreHistory(moves, snapshotPly);
+
+        for (int ply = snapshotPly; ply < moves.length; ply++) {
+            if (!game.makeMove(moves[ply])) {
+                log.warn("Journal for game {} has an unplayable move at ply {}, dropping the rest", gameId, ply);
+                write(gameId, game.getMoveHistory());
+                return;
+            }
+        }
+
+        if (moves.length > snapshotPly) {
+            log.debug("Replayed {} journaled moves for game {}", moves.length - snapshotPly, gameId);
+        }
+
+        // Drop a torn trailing record so later appends stay aligned
+        Path path = journalPath(gameId);
+        if (Files.exists(path) && Files.size(path) != (long) moves.length * RECORD_BYTES) {
+            write(gameId, moves);
+        }
+    }
+
+    /**
+     * Whether a full snapshot is due after the game's latest move
+     */
+    public static boolean isSnapshotDue(ChessGame game) {
+        return game.isGameOver() || game.getPlyCount() % SNAPSHOT_INTERVAL == 0;
+    }
+
+    private Path journalPath(String gameId) {
+        // Game IDs are typed in by players, so keep only file-name safe chars
+        StringBuilder name = new StringBuilder(gameId.length() + EXTENSION.length());
+        for (int i = 0; i < gameId.length(); i++) {
+            char c = gameId.charAt(i);
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-';
+            name.append(safe ? c : '_');
+        }
+        return directory.resolve(name.append(EXTENSION).toString());
+    }
+}
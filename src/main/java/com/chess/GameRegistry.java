@@ -0,0 +1,121 @@
+package com.chess;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * All games in progress, indexed by game ID and by opponent name so incoming chat
+ * messages can be routed with a hash lookup. One of them is the active game shown
+ * in the panel.
+ */
+public class GameRegistry {
+    private final Map<String, ChessGame> gamesById = new LinkedHashMap<>();
+    private final Map<String, List<ChessGame>> gamesByOpponent = new HashMap<>();
+
+    private ChessGame activeGame;
+
+    /**
+     * Normalizes a player name for lookups: case-insensitive, with the non-breaking
+     * spaces used in chat names treated as regular spaces
+     */
+    public static String normalizeName(String name) {
+        if (name == null) {
+            return "";
+        }
+        return name.replace('\u00A0', ' ').trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds a game, replacing any existing game with the same ID; returns the replaced game, or null
+     */
+    public synchronized ChessGame add(ChessGame game) {
+        ChessGame replaced = remove(game.getGameId());
+
+        gamesById.put(game.getGameId(), game);
+        gamesByOpponent.computeIfAbsent(normalizeName(game.getOpponentName()), name -> new ArrayList<>(1)).add(game);
+        return replaced;
+    }
+
+    /**
+     * Removes a game; if it was active, the next remaining game becomes active
+     */
+    public synchronized ChessGame remove(String gameId) {
+        ChessGame game = gamesById.remove(gameId);
+        if (game == null) {
+            return null;
+        }
+
+        String opponent = normalizeName(game.getOpponentName());
+        List<ChessGame> opponentGames = gamesByOpponent.get(opponent);
+        if (opponentGames != null) {
+            opponentGames.remove(game);
+            if (opponentGames.isEmpty()) {
+                gamesByOpponent.remove(opponent);
+            }
+        }
+
+        if (activeGame == game) {
+            activeGame = gamesById.isEmpty() ? null : gamesById.values().iterator().next();
+        }
+
+        return game;
+    }
+
+    /**
+     * True if a game against the opponent is in progress
+     */
+    public synchronized boolean hasOpponent(String opponentName) {
+        return gamesByOpponent.containsKey(normalizeName(opponentName));
+    }
+
+    /**
+     * Finds the game a chat message from the given sender belongs to, or null if the
+     * sender is not an opponent in the message's game
+     */
+    public synchronized ChessGame findGame(String sender, ChessMessage message) {
+        List<ChessGame> games = gamesByOpponent.get(normalizeName(sender));
+        if (games == null) {
+            return null;
+        }
+
+        for (ChessGame game : games) {
+            if (message.isForGame(game.getGameId())) {
+                return game;
+            }
+        }
+        return null;
+    }
+
+    public synchronized List<ChessGame> getGames() {
+        return new ArrayList<>(gamesById.values());
+    }
+
+    public synchronized List<String> getGameIds() {
+        return new ArrayList<>(gamesById.keySet());
+    }
+
+    public synchronized boolean isEmpty() {
+        return gamesById.isEmpty();
+    }
+
+    public synchronized ChessGame getActiveGame() {
+        return activeGame;
+    }
+
+    /**
+     * Makes the game with the given ID active, returning false if it is unknown
+     */
+    public synchronized boolean setActiveGame(String gameId) {
+        ChessGame game = gamesById.get(gameId);
+        if (game == null) {
+            return false;
+        }
+
+        activeGame = game;
+        return true;
+    }
+}
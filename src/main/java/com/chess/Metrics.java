@@ -0,0 +1,273 @@
+package com.chess;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the plugin's hot paths. Recording never allocates:
+ * histograms are fixed arrays of log-linear buckets, like HdrHistogram with three
+ * sub-bucket bits, so percentiles are accurate to within 12.5%.
+ *
+ * <p>While metrics are disabled, {@link #start()} is a single volatile read and recording
+ * returns straight away.</p>
+ */
+@Slf4j
+public final class Metrics {
+    // Start time handed out while disabled; timings started with it are not recorded
+    private static final long DISABLED = 0;
+
+    private static final List<Histogram> HISTOGRAMS = new ArrayList<>();
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+
+    public static final Histogram MAKE_MOVE = histogram("game.makeMove");
+    public static final Histogram VALID_MOVES = histogram("game.getValidMoves");
+    public static final Histogram BOARD_UPDATE = histogram("ui.updateBoard");
+    public static final Histogram SHOW_GAME_BOARD = histogram("ui.showGameBoard");
+    public static final Histogram SAVE_GAME = histogram("persistence.saveGame");
+    public static final Histogram PERSISTENCE_FLUSH = histogram("persistence.flush");
+    public static final Histogram CHAT_PARSE = histogram("chat.parse");
+    public static final Histogram CHAT_DISPATCH = histogram("chat.dispatch");
+    public static final Histogram GAME_COMMAND = histogram("game.command");
+
+    public static final Counter CHAT_MESSAGES = counter("chat.messages");
+    public static final Counter RESYNC_REQUESTS = counter("chat.resyncRequests");
+    public static final Counter REJECTED_COMMANDS = counter("game.rejectedCommands");
+    public static final Counter RENDER_MARKS = counter("ui.renderMarks");
+    public static final Counter RENDER_FLUSHES = counter("ui.renderFlushes");
+
+    private static volatile boolean enabled = false;
+
+    private Metrics() {
+    }
+
+    private static Histogram histogram(String name) {
+        Histogram histogram = new Histogram(name);
+        HISTOGRAMS.add(histogram);
+        return histogram;
+    }
+
+    private static Counter counter(String name) {
+        Counter counter = new Counter(name);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Start time for a timing, to be passed to {@link Histogram#recordSince(long)}
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    public static List<Histogram> getHistograms() {
+        return Collections.unmodifiableList(HISTOGRAMS);
+    }
+
+    public static List<Counter> getCounters() {
+        return Collections.unmodifiableList(COUNTERS);
+    }
+
+    public static void reset() {
+        HISTOGRAMS.forEach(Histogram::reset);
+        COUNTERS.forEach(Counter::reset);
+    }
+
+    /**
+     * One line per metric, as shown in the panel's debug section
+     */
+    public static String describe() {
+        StringBuilder text = new StringBuilder();
+        for (Histogram histogram : HISTOGRAMS) {
+            text.append(histogram).append('\n');
+        }
+        for (Counter counter : COUNTERS) {
+            text.append(counter).append('\n');
+        }
+        return text.toString();
+    }
+
+    public static void logAll() {
+        for (Histogram histogram : HISTOGRAMS) {
+            log.info("{}", histogram);
+        }
+        for (Counter counter : COUNTERS) {
+            log.info("{}", counter);
+        }
+    }
+
+    /**
+     * Formats a duration with a unit that keeps it short, e.g. "850ns", "12.3us" or "4.1ms"
+     */
+    static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%.2fs", nanos / 1e9);
+    }
+
+    public static final class Counter {
+        @Getter
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        void reset() {
+            count.reset();
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + getCount();
+        }
+    }
+
+    /**
+     * Latency histogram in nanoseconds. Values below 16 get a bucket each; above that,
+     * every power of two is split into eight equal buckets.
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int LINEAR_LIMIT = 16;
+        private static final int LINEAR_EXPONENT = 4;
+        private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - LINEAR_EXPONENT) * SUB_BUCKETS;
+
+        @Getter
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records the time since a start from {@link Metrics#start()}
+         */
+        public void recordSince(long startNanos) {
+            if (startNanos != DISABLED) {
+                record(System.nanoTime() - startNanos);
+            }
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0 || !enabled) {
+                return;
+            }
+            buckets.incrementAndGet(bucketIndex(nanos));
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        static int bucketIndex(long value) {
+            if (value < LINEAR_LIMIT) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR_LIMIT + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * Largest value that falls in the given bucket
+         */
+        static long bucketUpperBound(int index) {
+            if (index < LINEAR_LIMIT) {
+                return index;
+            }
+            int exponent = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_EXPONENT;
+            int subBucket = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+            long width = 1L << (exponent - SUB_BUCKET_BITS);
+            return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile (0-100), or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return Math.min(bucketUpperBound(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        public long getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : total.sum() / count;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+            total.reset();
+            max.reset();
+        }
+
+        @Override
+        public String toString() {
+            return name + " n=" + getCount()
+                    + " mean=" + formatNanos(getMean())
+                    + " p50=" + formatNanos(getPercentile(50))
+                    + " p99=" + formatNanos(getPercentile(99))
+                    + " max=" + formatNanos(getMax());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.chess;
+
+import net.runelite.client.ui.ColorScheme;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Debug section listing the latency histograms and counters from Metrics, followed by the
+ * persistence writer's own statistics. It refreshes once a second while shown and stops
+ * its timer when hidden.
+ */
+public class MetricsPanel extends JPanel {
+    private static final int REFRESH_MILLIS = 1000;
+
+    private final ChessPlugin plugin;
+    private final JTextArea metricsText;
+    private final Timer refreshTimer;
+
+    public MetricsPanel(ChessPlugin plugin) {
+        this.plugin = plugin;
+
+        setLayout(new BorderLayout(0, 5));
+        setBackground(ColorScheme.DARK_GRAY_COLOR);
+        setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createLineBorder(ColorScheme.LIGHT_GRAY_COLOR),
+                "Metrics"
+        ));
+
+        metricsText = new JTextArea(10, 20);
+        metricsText.setEditable(false);
+        metricsText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+        metricsText.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        metricsText.setForeground(Color.WHITE);
+        add(new JScrollPane(metricsText), BorderLayout.CENTER);
+
+        JButton logButton = new JButton("Log");
+        logButton.setFocusPainted(false);
+        logButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        logButton.setForeground(Color.WHITE);
+        logButton.addActionListener(e -> Metrics.logAll());
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.setFocusPainted(false);
+        resetButton.setBackground(ColorScheme.DARKER_GRAY_COLOR);
+        resetButton.setForeground(Color.WHITE);
+        resetButton.addActionListener(e -> {
+            Metrics.reset();
+            refresh();
+        });
+
+        JPanel buttons = new JPanel(new GridLayout(1, 2, 5, 0));
+        buttons.setBackground(ColorScheme.DARK_GRAY_COLOR);
+        buttons.add(logButton);
+        buttons.add(resetButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        refreshTimer = new Timer(REFRESH_MILLIS, e -> refresh());
+    }
+
+    /**
+     * Shows the section and starts refreshing it, or hides it and stops
+     */
+    public void setActive(boolean active) {
+        setVisible(active);
+        if (active) {
+            refresh();
+            refreshTimer.start();
+        } else {
+            refreshTimer.stop();
+        }
+    }
+
+    private void refresh() {
+        StringBuilder text = new StringBuilder(Metrics.describe());
+
+        // Kept by the writer since the plugin started, whether or not metrics are enabled
+        PersistenceWriter writer = plugin.getPersistenceWriter();
+        if (writer != null) {
+            text.append("persistence.lastFlush ").append(Metrics.formatNanos(writer.getLastFlushNanos())).append('\n')
+                    .append("persistence.flushes ").append(writer.getFlushCount()).append('\n')
+                    .append("persistence.coalescedWrites ").append(writer.getCoalescedWrites()).append('\n');
+        }
+        metricsText.setText(text.toString());
+    }
+}
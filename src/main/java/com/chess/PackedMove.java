@@ -0,0 +1,51 @@
+package com.chess;
+
+/**
+ * 16-bit move encoding: bits 0-5 hold the destination square, bits 6-11 the origin
+ * square and bits 12-14 the promotion piece. Squares are 0-63 from A1 to H8. This is
+ * the same layout Polyglot opening books use.
+ */
+public final class PackedMove {
+    public static final int NO_PROMOTION = 0;
+    public static final int KNIGHT = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int QUEEN = 4;
+
+    // Never a legal move, since origin and destination are the same square
+    public static final short NONE = 0;
+
+    private static final char[] PROMOTION_CHARS = {0, 'N', 'B', 'R', 'Q'};
+
+    private PackedMove() {
+    }
+
+    public static short of(int from, int to, int promotion) {
+        return (short) (to | (from << 6) | (promotion << 12));
+    }
+
+    public static int from(short move) {
+        return (move >> 6) & 0x3F;
+    }
+
+    public static int to(short move) {
+        return move & 0x3F;
+    }
+
+    public static int promotion(short move) {
+        return (move >> 12) & 0x7;
+    }
+
+    public static boolean isValid(short move) {
+        return from(move) != to(move) && promotion(move) <= QUEEN && (move & 0x8000) == 0;
+    }
+
+    /**
+     * Formats the move as "E2E4", with the promotion piece appended when there is one (e.g. "E7E8Q")
+     */
+    public static String toString(short move) {
+        String text = BoardSnapshot.squareKey(from(move)) + BoardSnapshot.squareKey(to(move));
+        int promotion = promotion(move);
+        return promotion == NO_PROMOTION ? text : text + PROMOTION_CHARS[promotion];
+    }
+}
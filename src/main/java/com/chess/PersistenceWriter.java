@@ -0,0 +1,303 @@
+package com.chess;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.config.ConfigManager;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Writes games to disk and config on a background thread, so moves made on the
+ * Swing or client thread never wait for I/O. A game with unwritten changes is
+ * marked dirty; everything saved before the next flush is written together, so a
+ * burst of moves costs a single journal append and at most one snapshot.
+ */
+@Slf4j
+public class PersistenceWriter {
+    // How long a dirty game waits for more changes before it is written
+    private static final long FLUSH_DELAY_MS = 500;
+
+    // How long shutDown waits for a flush already running on the writer thread
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    private final ConfigManager configManager;
+    private final GameJournal journal;
+    private final GameArchive archive;
+    private final ScheduledThreadPoolExecutor executor;
+
+    // Unwritten changes per dirty game, in the order the games became dirty; guarded by this
+    private final Map<String, PendingWrite> dirtyGames = new LinkedHashMap<>();
+
+    // Games whose journal failed to append; they are rewritten in full with their next snapshot
+    private final Set<String> brokenJournals = new HashSet<>();
+
+    private boolean flushScheduled = false;
+
+    // Held while draining and writing, so flushes from different threads can't reorder appends
+    private final Object flushLock = new Object();
+
+    private volatile long lastFlushNanos = 0;
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong coalescedWrites = new AtomicLong();
+
+    public PersistenceWriter(ConfigManager configManager, GameJournal journal, GameArchive archive) {
+        this.configManager = configManager;
+        this.journal = journal;
+        this.archive = archive;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "chess-persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // A flush still waiting for its delay at shutdown is done by the final flush instead
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queues the game's last move for its journal, plus a snapshot when one is due
+     */
+    public synchronized void saveMove(ChessGame game) {
+        PendingWrite write = markDirty(game.getGameId());
+
+        if (brokenJournals.contains(game.getGameId())) {
+            queueSnapshot(write, game, true);
+            return;
+        }
+
+        if (write.moveCount > 0) {
+            coalescedWrites.incrementAndGet();
+        }
+        write.addMove(game.getLastPackedMove());
+
+        if (GameJournal.isSnapshotDue(game)) {
+            queueSnapshot(write, game, false);
+        }
+    }
+
+    /**
+     * Queues a full snapshot of the game
+     */
+    public synchronized void saveGame(ChessGame game) {
+        PendingWrite write = markDirty(game.getGameId());
+        queueSnapshot(write, game, brokenJournals.contains(game.getGameId()));
+    }
+
+    /**
+     * Queues a full snapshot and rewrites the journal from the game's history, for when
+     * the moves already journaled no longer lead to its position
+     */
+    public synchronized void replaceGame(ChessGame game) {
+        PendingWrite write = markDirty(game.getGameId());
+        queueSnapshot(write, game, true);
+    }
+
+    /**
+     * Queues removal of the game's snapshot and journal, dropping any of its unwritten changes
+     */
+    public synchronized void deleteGame(String gameId) {
+        PendingWrite write = markDirty(gameId);
+        write.delete = true;
+        write.moveCount = 0;
+        write.snapshot = null;
+        write.history = null;
+        brokenJournals.remove(gameId);
+    }
+
+    /**
+     * Queues a game to be added to the archive of finished games
+     */
+    public synchronized void archiveGame(ChessGame game) {
+        PendingWrite write = markDirty(game.getGameId());
+        write.archiveRecord = GameArchive.Record.of(game, System.currentTimeMillis());
+    }
+
+    private void queueSnapshot(PendingWrite write, ChessGame game, boolean rewriteJournal) {
+        if (write.snapshot != null) {
+            coalescedWrites.incrementAndGet();
+        }
+
+        // Serialized here rather than on the writer thread, as the game is not thread-safe
+        write.snapshot = game.serialize();
+
+        if (rewriteJournal) {
+            // The full history supersedes any moves still waiting to be appended
+            write.history = game.getMoveHistory();
+            write.moveCount = 0;
+        }
+    }
+
+    private PendingWrite markDirty(String gameId) {
+        PendingWrite write = dirtyGames.get(gameId);
+        if (write == null) {
+            write = new PendingWrite();
+            dirtyGames.put(gameId, write);
+        }
+
+        if (!flushScheduled && !executor.isShutdown()) {
+            flushScheduled = true;
+            executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return write;
+    }
+
+    /**
+     * Reads and decodes an archived game on the writer thread, then hands it to the callback
+     * there; the callback gets null if the game can't be read
+     */
+    public void readArchived(int position, Consumer<GameArchive.Record> callback) {
+        try {
+            executor.execute(() -> {
+                GameArchive.Record record = null;
+                try {
+                    record = archive.open(position);
+                } catch (IOException | IndexOutOfBoundsException e) {
+                    log.error("Failed to open archived game {}", position, e);
+                }
+                callback.accept(record);
+            });
+        } catch (RejectedExecutionException e) {
+            callback.accept(null);
+        }
+    }
+
+    /**
+     * Writes every dirty game now, on the calling thread
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> writes;
+            synchronized (this) {
+                flushScheduled = false;
+                if (dirtyGames.isEmpty()) {
+                    return;
+                }
+
+                writes = new LinkedHashMap<>(dirtyGames);
+                dirtyGames.clear();
+            }
+
+            long start = System.nanoTime();
+            for (Map.Entry<String, PendingWrite> entry : writes.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            lastFlushNanos = System.nanoTime() - start;
+            Metrics.PERSISTENCE_FLUSH.record(lastFlushNanos);
+            flushCount.incrementAndGet();
+
+            log.debug("Flushed {} games in {} us", writes.size(), lastFlushNanos / 1000);
+        }
+    }
+
+    private void write(String gameId, PendingWrite write) {
+        String key = ChessConfig.GAME_KEY_PREFIX + gameId;
+
+        if (write.archiveRecord != null) {
+            try {
+                archive.append(write.archiveRecord);
+            } catch (IOException e) {
+                log.error("Failed to archive game {}", gameId, e);
+            }
+        }
+
+        if (write.delete) {
+            configManager.unsetConfiguration(ChessConfig.GROUP, key);
+            journal.delete(gameId);
+        }
+
+        try {
+            if (write.history != null) {
+                journal.write(gameId, write.history);
+                markJournalBroken(gameId, false);
+            }
+
+            // Moves saved after a rewrite was queued follow the rewritten history
+            if (write.moveCount > 0) {
+                journal.append(gameId, write.moves, write.moveCount);
+            }
+        } catch (IOException e) {
+            log.error("Failed to journal moves for game {}", gameId, e);
+            markJournalBroken(gameId, true);
+        }
+
+        if (write.snapshot != null) {
+            try {
+                configManager.setConfiguration(ChessConfig.GROUP, key, write.snapshot);
+            } catch (Exception e) {
+                log.error("Failed to save game {}", gameId, e);
+            }
+        }
+    }
+
+    private synchronized void markJournalBroken(String gameId, boolean broken) {
+        if (broken) {
+            brokenJournals.add(gameId);
+        } else {
+            brokenJournals.remove(gameId);
+        }
+    }
+
+    /**
+     * Stops the writer thread and writes everything still dirty on the calling thread. A flush
+     * already running is left to finish, as interrupting it would abort its file writes.
+     */
+    public void shutDown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                log.warn("Flush still running after {} ms", SHUTDOWN_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Waits on the flush lock for a flush that is still running, so nothing is written twice or out of order
+        flush();
+    }
+
+    /**
+     * How long the last flush took, in nanoseconds
+     */
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Number of saves that were folded into a write already waiting to be flushed
+     */
+    public long getCoalescedWrites() {
+        return coalescedWrites.get();
+    }
+
+    /**
+     * Unwritten changes to one game
+     */
+    private static final class PendingWrite {
+        private GameArchive.Record archiveRecord;
+        private boolean delete;
+        private short[] moves = new short[4];
+        private int moveCount;
+        private String snapshot;
+        private short[] history;
+
+        private void addMove(short move) {
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, moveCount * 2);
+            }
+            moves[moveCount++] = move;
+        }
+    }
+}
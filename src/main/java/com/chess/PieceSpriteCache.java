@@ -0,0 +1,142 @@
+package com.chess;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.util.ImageUtil;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of piece sprites, scaled once per pixel size and converted to the
+ * display's compatible image format so blits stay on the accelerated path. Only the
+ * most recently used sizes are kept, so resizing the sidebar or moving between
+ * displays with different scaling does not grow memory.
+ */
+@Slf4j
+public final class PieceSpriteCache {
+    private static final PieceSpriteCache INSTANCE = new PieceSpriteCache();
+
+    // Sizes kept at once; the board normally uses one, plus one while resizing
+    private static final int MAX_CACHED_SIZES = 3;
+
+    // Resource file names indexed by BoardSnapshot piece code
+    private static final String[] PIECE_FILE_NAMES = {
+            null,
+            "white_pawn.png", "white_knight.png", "white_bishop.png",
+            "white_rook.png", "white_queen.png", "white_king.png",
+            "black_pawn.png", "black_knight.png", "black_bishop.png",
+            "black_rook.png", "black_queen.png", "black_king.png"
+    };
+
+    private static final String[] PIECE_SYMBOLS = {
+            null, "♟", "♞", "♝", "♜", "♛", "♚", "♟", "♞", "♝", "♜", "♛", "♚"
+    };
+
+    // Original images, loaded once; null entries fall back to Unicode glyphs
+    private BufferedImage[] sourceImages;
+
+    private final Map<Integer, SpriteSet> spritesBySize = new LinkedHashMap<Integer, SpriteSet>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SpriteSet> eldest) {
+            return size() > MAX_CACHED_SIZES;
+        }
+    };
+
+    private static final class SpriteSet {
+        private final GraphicsConfiguration graphicsConfiguration;
+        private final Image[] sprites;
+
+        private SpriteSet(GraphicsConfiguration graphicsConfiguration, Image[] sprites) {
+            this.graphicsConfiguration = graphicsConfiguration;
+            this.sprites = sprites;
+        }
+    }
+
+    private PieceSpriteCache() {
+    }
+
+    public static PieceSpriteCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the sprites for every piece at the given size in device pixels, indexed by
+     * BoardSnapshot piece code. The returned array must not be modified.
+     */
+    public synchronized Image[] getSprites(int pixelSize, GraphicsConfiguration graphicsConfiguration) {
+        SpriteSet spriteSet = spritesBySize.get(pixelSize);
+        if (spriteSet == null || spriteSet.graphicsConfiguration != graphicsConfiguration) {
+            spriteSet = new SpriteSet(graphicsConfiguration, renderSprites(pixelSize, graphicsConfiguration));
+            spritesBySize.put(pixelSize, spriteSet);
+        }
+
+        return spriteSet.sprites;
+    }
+
+    private Image[] renderSprites(int pixelSize, GraphicsConfiguration graphicsConfiguration) {
+        if (sourceImages == null) {
+            sourceImages = loadSourceImages();
+        }
+
+        Image[] sprites = new Image[PIECE_FILE_NAMES.length];
+        for (byte piece = BoardSnapshot.WHITE_PAWN; piece <= BoardSnapshot.BLACK_KING; piece++) {
+            BufferedImage sprite = createImage(pixelSize, graphicsConfiguration);
+            Graphics2D g = sprite.createGraphics();
+
+            if (sourceImages[piece] != null) {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(sourceImages[piece], 0, 0, pixelSize, pixelSize, null);
+            } else {
+                drawPieceSymbol(g, piece, pixelSize);
+            }
+
+            g.dispose();
+            sprites[piece] = sprite;
+        }
+
+        return sprites;
+    }
+
+    private static BufferedImage createImage(int pixelSize, GraphicsConfiguration graphicsConfiguration) {
+        if (graphicsConfiguration != null) {
+            return graphicsConfiguration.createCompatibleImage(pixelSize, pixelSize, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(pixelSize, pixelSize, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static BufferedImage[] loadSourceImages() {
+        BufferedImage[] images = new BufferedImage[PIECE_FILE_NAMES.length];
+        for (byte piece = BoardSnapshot.WHITE_PAWN; piece <= BoardSnapshot.BLACK_KING; piece++) {
+            String fileName = PIECE_FILE_NAMES[piece];
+            try {
+                images[piece] = ImageUtil.loadImageResource(PieceSpriteCache.class, "/com/chess/pieces/" + fileName);
+            } catch (Exception e) {
+                log.error("Failed to load chess piece image: " + fileName, e);
+                // Fall back to Unicode character
+            }
+        }
+        return images;
+    }
+
+    private static void drawPieceSymbol(Graphics2D g, byte piece, int pixelSize) {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font("Arial", Font.BOLD, Math.max(1, pixelSize * 3 / 5)));
+        g.setColor(BoardSnapshot.isWhitePiece(piece) ? Color.WHITE : Color.BLACK);
+
+        String symbol = PIECE_SYMBOLS[piece];
+        FontMetrics metrics = g.getFontMetrics();
+        int x = (pixelSize - metrics.stringWidth(symbol)) / 2;
+        int y = (pixelSize - metrics.getHeight()) / 2 + metrics.getAscent();
+        g.drawString(symbol, x, y);
+    }
+}
@@ -0,0 +1,151 @@
+package com.chess;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Zobrist hashes of the positions reached in a game, one per ply with the starting
+ * position at index 0. Each hash also has an occurrence count in a small open-addressed
+ * table, so asking how often a position was seen is a lookup rather than a scan.
+ */
+final class PositionHistory {
+    // Stands for a position from before the history was recorded; never counted
+    static final long UNKNOWN = 0;
+
+    private long[] hashes = new long[64];
+    private int size = 0;
+
+    // Occurrence counts by hash, with linear probing; capacity is a power of two kept at most half full
+    private long[] keys = new long[64];
+    private int[] counts = new int[64];
+    private int distinct = 0;
+
+    /**
+     * Records the position reached by the next ply and returns how many times it has now occurred
+     */
+    int push(long hash) {
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        hashes[size++] = hash;
+        return hash == UNKNOWN ? 0 : increment(hash);
+    }
+
+    /**
+     * Forgets the latest position, for a move that was taken back
+     */
+    void pop() {
+        long hash = hashes[--size];
+        if (hash != UNKNOWN) {
+            // The key stays in the table with a lower count, so probe chains through it stay intact
+            counts[find(hash)]--;
+        }
+    }
+
+    /**
+     * Hash of the current position
+     */
+    long current() {
+        return hashes[size - 1];
+    }
+
+    /**
+     * Hash of the position after the given ply, or UNKNOWN if it was not recorded
+     */
+    long get(int ply) {
+        return ply >= 0 && ply < size ? hashes[ply] : UNKNOWN;
+    }
+
+    /**
+     * Number of times the position has occurred in the game
+     */
+    int occurrences(long hash) {
+        if (hash == UNKNOWN) {
+            return 0;
+        }
+        int slot = find(hash);
+        return keys[slot] == hash ? counts[slot] : 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copy of the hashes, one per position from the start of the game
+     */
+    long[] toArray() {
+        return Arrays.copyOf(hashes, size);
+    }
+
+    /**
+     * Replaces the history with hashes saved by {@link #toArray()}
+     */
+    void restore(long[] saved) {
+        size = 0;
+        distinct = 0;
+        Arrays.fill(keys, UNKNOWN);
+        Arrays.fill(counts, 0);
+
+        for (long hash : saved) {
+            push(hash);
+        }
+    }
+
+    /**
+     * Compact text form for the saved game: the hashes as big-endian bytes in Base64
+     */
+    String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(size * Long.BYTES);
+        buffer.asLongBuffer().put(hashes, 0, size);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    static long[] decode(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded));
+        long[] saved = new long[buffer.remaining() / Long.BYTES];
+        buffer.asLongBuffer().get(saved);
+        return saved;
+    }
+
+    private int increment(long hash) {
+        int slot = find(hash);
+        if (keys[slot] != hash) {
+            if ((distinct + 1) * 2 > keys.length) {
+                grow();
+                slot = find(hash);
+            }
+            keys[slot] = hash;
+            distinct++;
+        }
+        return ++counts[slot];
+    }
+
+    /**
+     * Slot holding the hash, or the empty slot where it would go
+     */
+    private int find(long hash) {
+        int mask = keys.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != UNKNOWN && keys[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != UNKNOWN) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.chess;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Collects what changed in the game view and redraws it at most once per frame on the
+ * Swing thread. Changes can be marked from any thread; every mark made before a flush
+ * is folded into it, so a burst of moves from a resync or a batched message costs one
+ * paint rather than one per move.
+ */
+public class RenderScheduler {
+    // Pieces and last move of the position
+    public static final int BOARD = 1;
+    // Premove squares drawn over the board
+    public static final int HIGHLIGHTS = 1 << 1;
+    // Turn, result and book line labels
+    public static final int STATUS = 1 << 2;
+    public static final int ALL = BOARD | HIGHLIGHTS | STATUS;
+
+    // Shortest time between two flushes, about one frame at 60 Hz
+    static final int FRAME_MILLIS = 16;
+
+    private final IntConsumer renderer;
+
+    // Changes marked since the last flush; a flush is scheduled whenever this is non-zero
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Delays a flush that would come less than a frame after the previous one
+    private final Timer frameTimer;
+
+    // Only used on the Swing thread
+    private long lastFlushNanos;
+
+    /**
+     * Creates a scheduler that hands the changes of each flush to the renderer on the Swing thread
+     */
+    public RenderScheduler(IntConsumer renderer) {
+        this.renderer = renderer;
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> flush());
+        this.frameTimer.setRepeats(false);
+    }
+
+    /**
+     * Which parts of the view differ between two snapshots of the same game; all of it if there was no earlier one
+     */
+    public static int changesBetween(BoardSnapshot previous, BoardSnapshot current) {
+        if (previous == null || current == null) {
+            return ALL;
+        }
+
+        int changes = 0;
+        if (!previous.hasSamePosition(current)) {
+            changes |= BOARD | STATUS;
+        }
+        if (previous.getPremoveSquares() != current.getPremoveSquares()) {
+            changes |= HIGHLIGHTS;
+        }
+        return changes;
+    }
+
+    /**
+     * Marks parts of the view as changed; safe to call from any thread
+     */
+    public void mark(int changes) {
+        if (changes == 0) {
+            return;
+        }
+
+        Metrics.RENDER_MARKS.increment();
+        if (pending.getAndAccumulate(changes, (marked, added) -> marked | added) == 0) {
+            SwingUtilities.invokeLater(this::scheduleFlush);
+        }
+    }
+
+    /**
+     * Redraws the given parts now, along with anything already marked; for when the view
+     * itself was just swapped in. Swing thread only.
+     */
+    public void flushNow(int changes) {
+        frameTimer.stop();
+        render(changes | pending.getAndSet(0));
+    }
+
+    private void scheduleFlush() {
+        long sinceFlush = (System.nanoTime() - lastFlushNanos) / 1_000_000;
+        if (sinceFlush >= FRAME_MILLIS) {
+            flush();
+        } else if (!frameTimer.isRunning()) {
+            frameTimer.setInitialDelay((int) (FRAME_MILLIS - sinceFlush));
+            frameTimer.restart();
+        }
+    }
+
+    private void flush() {
+        int changes = pending.getAndSet(0);
+        if (changes != 0) {
+            render(changes);
+        }
+    }
+
+    private void render(int changes) {
+        lastFlushNanos = System.nanoTime();
+        Metrics.RENDER_FLUSHES.increment();
+        renderer.accept(changes);
+    }
+}
@@ -0,0 +1,575 @@
+package com.chess;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Piece;
+import com.github.bhlangonijr.chesslib.move.Move;
+import com.github.bhlangonijr.chesslib.move.MoveGenerator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Alpha-beta search on worker threads: iterative deepening with quiescence search,
+ * principal variation, transposition table, capture and killer move ordering and a
+ * time or node budget. Searches scale across cores with Lazy SMP: every thread
+ * searches the same position on its own board, and they share work only through
+ * the lock-free transposition table. Only one search runs at a time; starting
+ * another cancels the previous one.
+ */
+@Slf4j
+public class SearchEngine {
+    private static final int MAX_PLY = 128;
+
+    // How often, in nodes, the budget and cancellation are checked
+    private static final int CHECK_INTERVAL = 2048;
+
+    public static final int MAX_THREADS = 64;
+
+    private final ExecutorService executor;
+
+    private volatile int threads;
+
+    // Size asked for in the config; the table is rounded down to a power of two
+    private int hashMegabytes;
+
+    // Allocated by the first search, so no memory is held until a hint is asked for; guarded by this
+    private TranspositionTable table;
+
+    private Search current;
+
+    public SearchEngine(int threads, int hashMegabytes) {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "chess-search-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        this.threads = clampThreads(threads);
+        this.hashMegabytes = hashMegabytes;
+    }
+
+    /**
+     * Applies a new thread count and table size to the searches started from now on
+     */
+    public synchronized void configure(int threads, int hashMegabytes) {
+        this.threads = clampThreads(threads);
+
+        if (this.hashMegabytes != hashMegabytes) {
+            // The running search still holds the old table; drop it rather than resize under it,
+            // and leave the new one to the next search
+            this.hashMegabytes = hashMegabytes;
+            stop();
+            table = null;
+        }
+    }
+
+    private static int clampThreads(int threads) {
+        return Math.max(1, Math.min(threads, MAX_THREADS));
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * The table shared by the searches, allocated on first use
+     */
+    public synchronized TranspositionTable getTranspositionTable() {
+        if (table == null) {
+            table = new TranspositionTable(hashMegabytes, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+        }
+        return table;
+    }
+
+    /**
+     * Starts searching the given position, cancelling any search still running.
+     * Progress is reported to the listener on the main search thread.
+     */
+    public synchronized Search start(String fen, SearchLimits limits, SearchListener listener) {
+        stop();
+
+        current = new Search(fen, limits, listener, threads, getTranspositionTable(), executor);
+        executor.execute(current::run);
+        return current;
+    }
+
+    /**
+     * Searches the given position on the calling thread, plus helper threads, and
+     * returns the deepest completed iteration; null if there are no legal moves
+     */
+    public SearchInfo analyze(String fen, SearchLimits limits) {
+        Search search = new Search(fen, limits, null, threads, getTranspositionTable(), executor);
+        search.run();
+        return search.result;
+    }
+
+    /**
+     * Cancels the running search, if any
+     */
+    public synchronized void stop() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+
+    public void shutDown() {
+        stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * A single search request; cancel it once its position is no longer relevant
+     */
+    public static final class Search {
+        private final String fen;
+        private final SearchLimits limits;
+        private final SearchListener listener;
+        private final int threads;
+        private final TranspositionTable table;
+        private final ExecutorService executor;
+
+        private volatile boolean cancelled = false;
+        private volatile boolean done = false;
+
+        // Set once the main thread finishes, telling the helper threads to stop
+        private volatile boolean finished = false;
+
+        // Nodes searched by all threads, added in batches of CHECK_INTERVAL
+        private final AtomicLong nodes = new AtomicLong();
+        private final long startTime = System.currentTimeMillis();
+
+        private SearchInfo result;
+
+        private Search(String fen, SearchLimits limits, SearchListener listener, int threads,
+                       TranspositionTable table, ExecutorService executor) {
+            this.fen = fen;
+            this.limits = limits;
+            this.listener = listener;
+            this.threads = threads;
+            this.table = table;
+            this.executor = executor;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        private void run() {
+            List<Future<?>> helpers = new ArrayList<>(threads - 1);
+            try {
+                if (cancelled) {
+                    return;
+                }
+
+                table.newSearch();
+
+                // Helpers run the same iterative deepening and only feed the shared table
+                for (int i = 1; i < threads; i++) {
+                    Searcher helper = new Searcher(loadBoard(), this, i);
+                    helpers.add(executor.submit(() -> helper.iterate(null)));
+                }
+
+                result = new Searcher(loadBoard(), this, 0).iterate(listener);
+            } catch (Exception e) {
+                log.error("Search failed for position {}", fen, e);
+            } finally {
+                finished = true;
+                for (Future<?> helper : helpers) {
+                    try {
+                        helper.get();
+                    } catch (Exception e) {
+                        log.error("Helper search failed for position {}", fen, e);
+                    }
+                }
+                if (result != null) {
+                    result = result.withTotals(nodes.get(), System.currentTimeMillis() - startTime);
+                }
+                done = true;
+            }
+
+            if (!cancelled && listener != null) {
+                listener.onComplete(result);
+            }
+        }
+
+        private Board loadBoard() {
+            Board board = new Board();
+            board.loadFromFen(fen);
+            return board;
+        }
+    }
+
+    /**
+     * State of one search on its own board; not thread-safe
+     */
+    static final class Searcher {
+        private final Board board;
+        private final SearchLimits limits;
+        private final Search search;
+        private final TranspositionTable table;
+
+        // 0 for the main thread, which reports progress; helpers only fill the table
+        private final int threadIndex;
+
+        private long nodes = 0;
+        private boolean aborted = false;
+
+        // Triangular principal variation table
+        private final Move[][] pv = new Move[MAX_PLY][MAX_PLY];
+        private final int[] pvLength = new int[MAX_PLY];
+
+        // Best line of the last completed iteration, tried first in the next one
+        private Move[] previousPv = new Move[0];
+        private boolean followingPv;
+
+        // Quiet moves that caused a beta cutoff, two per ply
+        private final Move[][] killers = new Move[MAX_PLY][2];
+
+        // Cutoff counts of quiet moves by from and to square
+        private final int[][] history = new int[64][64];
+
+        Searcher(Board board, Search search, int threadIndex) {
+            this.board = board;
+            this.limits = search.limits;
+            this.search = search;
+            this.table = search.table;
+            this.threadIndex = threadIndex;
+        }
+
+        /**
+         * Iterative deepening; returns the result of the deepest completed iteration
+         */
+        SearchInfo iterate(SearchListener listener) {
+            SearchInfo best = null;
+
+            // Half the helpers run one ply ahead, so threads spread over different depths
+            for (int depth = 1 + (threadIndex & 1); depth <= limits.getMaxDepth(); depth++) {
+                followingPv = true;
+                int score = search(depth, 0, -Evaluator.INFINITY, Evaluator.INFINITY);
+                if (aborted || pvLength[0] == 0) {
+                    break;
+                }
+
+                previousPv = new Move[pvLength[0]];
+                System.arraycopy(pv[0], 0, previousPv, 0, pvLength[0]);
+
+                best = new SearchInfo(depth, score, toPackedMoves(previousPv),
+                        search.nodes.get() + nodes % CHECK_INTERVAL, System.currentTimeMillis() - search.startTime);
+                if (listener != null) {
+                    listener.onInfo(best);
+                }
+
+                // No point searching deeper once a forced mate has been found
+                if (best.isMate()) {
+                    break;
+                }
+            }
+
+            search.nodes.addAndGet(nodes % CHECK_INTERVAL);
+            return best;
+        }
+
+        private int search(int depth, int ply, int alpha, int beta) {
+            pvLength[ply] = ply;
+
+            if ((++nodes % CHECK_INTERVAL) == 0) {
+                checkLimits();
+            }
+            if (aborted) {
+                return 0;
+            }
+
+            if (ply > 0 && (board.isRepetition() || board.getHalfMoveCounter() >= 100)) {
+                return 0;
+            }
+
+            // The table may hold a result for this position from another thread or iteration
+            long key = board.getIncrementalHashKey();
+            long entry = table.probe(key);
+            short tableMove = PackedMove.NONE;
+            if (entry != 0) {
+                tableMove = TranspositionTable.move(entry);
+
+                if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+                    int score = fromTableScore(TranspositionTable.score(entry), ply);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.BOUND_EXACT
+                            || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+                            || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+                        return score;
+                    }
+                }
+            }
+
+            boolean inCheck = board.isKingAttacked();
+            if (inCheck) {
+                // Check extension, so forcing lines aren't cut short
+                depth++;
+            }
+
+            if (depth <= 0) {
+                return quiesce(ply, alpha, beta);
+            }
+            if (ply >= MAX_PLY - 1) {
+                return Evaluator.evaluate(board);
+            }
+
+            List<Move> moves = MoveGenerator.generateLegalMoves(board);
+            if (moves.isEmpty()) {
+                return inCheck ? -Evaluator.MATE + ply : 0;
+            }
+
+            int[] scores = scoreMoves(moves, ply, tableMove);
+            int originalAlpha = alpha;
+            int bestScore = -Evaluator.INFINITY;
+            Move bestMove = null;
+
+            for (int i = 0; i < moves.size(); i++) {
+                Move move = pickMove(moves, scores, i);
+                boolean quiet = !isCapture(move) && !isPromotion(move);
+
+                board.doMove(move);
+                int score = -search(depth - 1, ply + 1, -beta, -alpha);
+                board.undoMove();
+
+                if (aborted) {
+                    return 0;
+                }
+
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+
+                    if (score > alpha) {
+                        alpha = score;
+                        updatePv(ply, move);
+
+                        if (score >= beta) {
+                            if (quiet) {
+                                rememberCutoff(move, ply, depth);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+
+            int bound = bestScore >= beta ? TranspositionTable.BOUND_LOWER
+                    : bestScore > originalAlpha ? TranspositionTable.BOUND_EXACT
+                    : TranspositionTable.BOUND_UPPER;
+            table.store(key, bestMove != null ? ChessGame.toPackedMove(bestMove) : PackedMove.NONE,
+                    toTableScore(bestScore, ply), depth, bound);
+
+            return bestScore;
+        }
+
+        /**
+         * Mate scores are stored relative to the position rather than the root, so they stay valid at any ply
+         */
+        private static int toTableScore(int score, int ply) {
+            if (score >= Evaluator.MATE - MAX_PLY) {
+                return score + ply;
+            }
+            if (score <= -Evaluator.MATE + MAX_PLY) {
+                return score - ply;
+            }
+            return score;
+        }
+
+        private static int fromTableScore(int score, int ply) {
+            if (score >= Evaluator.MATE - MAX_PLY) {
+                return score - ply;
+            }
+            if (score <= -Evaluator.MATE + MAX_PLY) {
+                return score + ply;
+            }
+            return score;
+        }
+
+        /**
+         * Searches captures and promotions only, until the position is quiet
+         */
+        private int quiesce(int ply, int alpha, int beta) {
+            pvLength[ply] = ply;
+
+            if ((++nodes % CHECK_INTERVAL) == 0) {
+                checkLimits();
+            }
+            if (aborted) {
+                return 0;
+            }
+
+            int standPat = Evaluator.evaluate(board);
+            if (standPat >= beta || ply >= MAX_PLY - 1) {
+                return standPat;
+            }
+            if (standPat > alpha) {
+                alpha = standPat;
+            }
+
+            List<Move> moves = MoveGenerator.generateLegalMoves(board);
+            List<Move> tactical = new ArrayList<>();
+            for (Move move : moves) {
+                if (isCapture(move) || isPromotion(move)) {
+                    tactical.add(move);
+                }
+            }
+
+            int[] scores = scoreMoves(tactical, ply, PackedMove.NONE);
+            for (int i = 0; i < tactical.size(); i++) {
+                Move move = pickMove(tactical, scores, i);
+
+                board.doMove(move);
+                int score = -quiesce(ply + 1, -beta, -alpha);
+                board.undoMove();
+
+                if (aborted) {
+                    return 0;
+                }
+
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (score >= beta) {
+                        return score;
+                    }
+                }
+            }
+
+            return alpha;
+        }
+
+        /**
+         * Ordering scores: the table's best move and last iteration's PV move, then captures by most valuable victim
+         * and least valuable attacker, promotions, killer moves and the history heuristic
+         */
+        private int[] scoreMoves(List<Move> moves, int ply, short tableMove) {
+            Move pvMove = null;
+            if (followingPv && ply < previousPv.length) {
+                pvMove = previousPv[ply];
+            }
+            boolean pvMoveFound = false;
+
+            int[] scores = new int[moves.size()];
+            for (int i = 0; i < scores.length; i++) {
+                Move move = moves.get(i);
+                Piece victim = board.getPiece(move.getTo());
+
+                if (tableMove != PackedMove.NONE && ChessGame.toPackedMove(move) == tableMove) {
+                    scores[i] = 2_000_000;
+                    pvMoveFound |= move.equals(pvMove);
+                } else if (move.equals(pvMove)) {
+                    scores[i] = 1_000_000;
+                    pvMoveFound = true;
+                } else if (victim != Piece.NONE) {
+                    scores[i] = 100_000 + Evaluator.pieceValue(victim) * 10 - Evaluator.pieceValue(board.getPiece(move.getFrom())) / 100;
+                } else if (isPromotion(move)) {
+                    scores[i] = 90_000 + Evaluator.pieceValue(move.getPromotion());
+                } else if (move.equals(killers[ply][0])) {
+                    scores[i] = 80_000;
+                } else if (move.equals(killers[ply][1])) {
+                    scores[i] = 79_000;
+                } else {
+                    scores[i] = history[move.getFrom().ordinal()][move.getTo().ordinal()];
+                }
+            }
+
+            // Stop following the PV as soon as we leave it
+            followingPv = pvMoveFound;
+            return scores;
+        }
+
+        /**
+         * Moves the best-scoring remaining move to the given position and returns it
+         */
+        private static Move pickMove(List<Move> moves, int[] scores, int index) {
+            int best = index;
+            for (int i = index + 1; i < scores.length; i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+
+            if (best != index) {
+                int score = scores[index];
+                scores[index] = scores[best];
+                scores[best] = score;
+
+                Move move = moves.get(index);
+                moves.set(index, moves.get(best));
+                moves.set(best, move);
+            }
+            return moves.get(index);
+        }
+
+        private boolean isCapture(Move move) {
+            if (board.getPiece(move.getTo()) != Piece.NONE) {
+                return true;
+            }
+
+            // En passant: a pawn changing file onto an empty square
+            Piece piece = board.getPiece(move.getFrom());
+            return (piece == Piece.WHITE_PAWN || piece == Piece.BLACK_PAWN)
+                    && (move.getFrom().ordinal() & 7) != (move.getTo().ordinal() & 7);
+        }
+
+        private static boolean isPromotion(Move move) {
+            return move.getPromotion() != null && move.getPromotion() != Piece.NONE;
+        }
+
+        private void rememberCutoff(Move move, int ply, int depth) {
+            if (!move.equals(killers[ply][0])) {
+                killers[ply][1] = killers[ply][0];
+                killers[ply][0] = move;
+            }
+            history[move.getFrom().ordinal()][move.getTo().ordinal()] += depth * depth;
+        }
+
+        private void updatePv(int ply, Move move) {
+            pv[ply][ply] = move;
+            int length = pvLength[ply + 1];
+            for (int i = ply + 1; i < length; i++) {
+                pv[ply][i] = pv[ply + 1][i];
+            }
+            pvLength[ply] = Math.max(length, ply + 1);
+        }
+
+        private void checkLimits() {
+            long totalNodes = search.nodes.addAndGet(CHECK_INTERVAL);
+
+            if (search.cancelled || search.finished) {
+                aborted = true;
+            } else if (limits.getMaxNodes() > 0 && totalNodes >= limits.getMaxNodes()) {
+                aborted = true;
+            } else if (limits.getMaxTimeMillis() > 0
+                    && System.currentTimeMillis() - search.startTime >= limits.getMaxTimeMillis()) {
+                aborted = true;
+            }
+        }
+
+        private static short[] toPackedMoves(Move[] moves) {
+            short[] packed = new short[moves.length];
+            for (int i = 0; i < moves.length; i++) {
+                packed[i] = ChessGame.toPackedMove(moves[i]);
+            }
+            return packed;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.chess;
+
+import lombok.Getter;
+
+/**
+ * Result of one completed search iteration
+ */
+public final class SearchInfo {
+    @Getter
+    private final int depth;
+
+    // Centipawns from the point of view of the side to move
+    @Getter
+    private final int score;
+
+    @Getter
+    private final short bestMove;
+
+    // Principal variation as PackedMoves, starting with the best move
+    private final short[] pv;
+
+    @Getter
+    private final long nodes;
+
+    @Getter
+    private final long elapsedMillis;
+
+    SearchInfo(int depth, int score, short[] pv, long nodes, long elapsedMillis) {
+        this.depth = depth;
+        this.score = score;
+        this.bestMove = pv.length > 0 ? pv[0] : PackedMove.NONE;
+        this.pv = pv;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * The same result with the node count and time of the whole search, including unfinished iterations
+     */
+    SearchInfo withTotals(long nodes, long elapsedMillis) {
+        return new SearchInfo(depth, score, pv, nodes, elapsedMillis);
+    }
+
+    public short[] getPv() {
+        return pv.clone();
+    }
+
+    public boolean isMate() {
+        return Math.abs(score) >= Evaluator.MATE - SearchLimits.MAX_DEPTH * 2;
+    }
+
+    /**
+     * Moves until mate, negative if the side to move gets mated; only meaningful if isMate()
+     */
+    public int getMateIn() {
+        int plies = Evaluator.MATE - Math.abs(score);
+        return (score > 0 ? 1 : -1) * (plies + 1) / 2;
+    }
+
+    public long getNodesPerSecond() {
+        return elapsedMillis == 0 ? nodes * 1000 : nodes * 1000 / elapsedMillis;
+    }
+
+    /**
+     * Short description such as "+0.35" or "#3"
+     */
+    public String formatScore() {
+        if (isMate()) {
+            return "#" + getMateIn();
+        }
+        return String.format("%+.2f", score / 100.0);
+    }
+}
@@ -0,0 +1,39 @@
+package com.chess;
+
+import lombok.Getter;
+
+/**
+ * Budget for a search: it stops at whichever limit is reached first
+ */
+public final class SearchLimits {
+    public static final int MAX_DEPTH = 64;
+
+    @Getter
+    private final int maxDepth;
+
+    // 0 for no limit
+    @Getter
+    private final long maxTimeMillis;
+
+    // 0 for no limit
+    @Getter
+    private final long maxNodes;
+
+    public SearchLimits(int maxDepth, long maxTimeMillis, long maxNodes) {
+        this.maxDepth = Math.max(1, Math.min(maxDepth, MAX_DEPTH));
+        this.maxTimeMillis = maxTimeMillis;
+        this.maxNodes = maxNodes;
+    }
+
+    public static SearchLimits ofTime(long millis) {
+        return new SearchLimits(MAX_DEPTH, millis, 0);
+    }
+
+    public static SearchLimits ofNodes(long nodes) {
+        return new SearchLimits(MAX_DEPTH, 0, nodes);
+    }
+
+    public static SearchLimits ofDepth(int depth) {
+        return new SearchLimits(depth, 0, 0);
+    }
+}
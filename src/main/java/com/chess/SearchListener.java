@@ -0,0 +1,17 @@
+package com.chess;
+
+/**
+ * Receives progress from a running search, on the search's worker thread
+ */
+public interface SearchListener {
+    /**
+     * Called each time a deeper iteration completes, with the best line found so far
+     */
+    void onInfo(SearchInfo info);
+
+    /**
+     * Called once when the search ends on its own; not called if it was cancelled
+     */
+    default void onComplete(SearchInfo info) {
+    }
+}
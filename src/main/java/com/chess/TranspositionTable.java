@@ -0,0 +1,191 @@
+package com.chess;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size hash table of search results shared by all search threads without
+ * locks. Each entry is two longs: the packed data and the position key XORed with
+ * that data. A reader recomputes the key from both halves, so an entry torn by a
+ * concurrent write simply fails verification and is treated as a miss.
+ *
+ * <p>Entries are grouped in buckets of two. The first slot keeps the more valuable
+ * result according to the replacement policy, the second is always overwritten,
+ * so recent positions are never locked out by deep but stale ones.</p>
+ */
+public final class TranspositionTable {
+    public static final int BOUND_EXACT = 1;
+    // Score is at least the stored value (the search failed high)
+    public static final int BOUND_LOWER = 2;
+    // Score is at most the stored value (the search failed low)
+    public static final int BOUND_UPPER = 3;
+
+    /**
+     * How the first slot of a bucket is chosen for replacement
+     */
+    public enum ReplacementPolicy {
+        // Always overwrite, like the second slot
+        ALWAYS,
+        // Keep the deeper result, unless it was stored by an earlier search
+        DEPTH_PREFERRED
+    }
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int LONGS_PER_BUCKET = 4;
+
+    // Data layout: move in bits 0-15, score in 16-31, depth in 32-39, bound in 40-41, generation in 42-49
+    private static final int SCORE_SHIFT = 16;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int GENERATION_SHIFT = 42;
+    private static final int GENERATION_MASK = 0xFF;
+
+    private final long[] table;
+    private final int bucketMask;
+    private final ReplacementPolicy policy;
+
+    // Bumped at the start of every search so older entries can be recognised
+    private volatile int generation = 0;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    public TranspositionTable(int megabytes, ReplacementPolicy policy) {
+        // Round down to a power of two number of buckets so an index is a mask
+        long entries = Math.max(2, (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+        int buckets = Integer.highestOneBit((int) Math.min(entries / 2, Integer.MAX_VALUE / LONGS_PER_BUCKET));
+
+        this.table = new long[buckets * LONGS_PER_BUCKET];
+        this.bucketMask = buckets - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Size of the table in megabytes
+     */
+    public int getMegabytes() {
+        return (int) ((long) table.length * Long.BYTES / (1024 * 1024));
+    }
+
+    /**
+     * Starts a new search generation; entries from earlier generations are replaced first
+     */
+    public void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        probes.reset();
+        hits.reset();
+    }
+
+    /**
+     * Looks up a position, returning its packed data or 0 if it is not stored
+     */
+    public long probe(long key) {
+        probes.increment();
+
+        int bucket = bucketIndex(key);
+        for (int slot = bucket; slot < bucket + LONGS_PER_BUCKET; slot += 2) {
+            long data = table[slot + 1];
+            if (data != 0 && (table[slot] ^ data) == key) {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result. Mate scores must already be made relative to this position.
+     */
+    public void store(long key, short move, int score, int depth, int bound) {
+        int bucket = bucketIndex(key);
+        int currentGeneration = generation;
+
+        // Keep the old best move when the new result has none
+        int slot = bucket;
+        long first = table[bucket + 1];
+        if ((table[bucket] ^ first) == key) {
+            if (move == PackedMove.NONE) {
+                move = move(first);
+            }
+        } else if ((table[bucket + 2] ^ table[bucket + 3]) == key) {
+            slot = bucket + 2;
+            if (move == PackedMove.NONE) {
+                move = move(table[bucket + 3]);
+            }
+        } else if (!replacesFirst(first, depth, currentGeneration)) {
+            slot = bucket + 2;
+        }
+
+        long data = (move & 0xFFFFL)
+                | ((score & 0xFFFFL) << SCORE_SHIFT)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) currentGeneration << GENERATION_SHIFT);
+
+        table[slot] = key ^ data;
+        table[slot + 1] = data;
+    }
+
+    private boolean replacesFirst(long existing, int depth, int currentGeneration) {
+        if (policy == ReplacementPolicy.ALWAYS || existing == 0) {
+            return true;
+        }
+        return generation(existing) != currentGeneration || depth >= depth(existing);
+    }
+
+    private int bucketIndex(long key) {
+        // Fold the high half in so both halves of the key pick the bucket
+        return (int) ((key ^ (key >>> 32)) & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    public static short move(long data) {
+        return (short) data;
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> SCORE_SHIFT);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 0x3;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    /**
+     * Permille of sampled entries written during the current search
+     */
+    public int getFillPermille() {
+        int sampled = Math.min(1000, table.length / 2);
+        int used = 0;
+        for (int i = 0; i < sampled; i++) {
+            long data = table[i * 2 + 1];
+            if (data != 0 && generation(data) == generation) {
+                used++;
+            }
+        }
+        return sampled == 0 ? 0 : used * 1000 / sampled;
+    }
+
+    /**
+     * Fraction of probes that found their position, since the table was created or cleared
+     */
+    public double getHitRate() {
+        long probeCount = probes.sum();
+        return probeCount == 0 ? 0 : (double) hits.sum() / probeCount;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+}
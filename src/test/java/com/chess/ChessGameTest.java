@@ -0,0 +1,205 @@
+package com.chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChessGameTest
+{
+	@Test
+	public void generatesMovesOncePerPly()
+	{
+		ChessGame game = new ChessGame("gen00001");
+		// The start position is generated on first use, before the count is taken
+		game.getValidMoves("E2");
+		long generated = game.getMoveGenerationCount();
+
+		// Fool's mate; every ply looks up valid moves a few times, then plays and checks for the end
+		String[][] plies = {{"F2", "F3"}, {"E7", "E5"}, {"G2", "G4"}, {"D8", "H4"}};
+		for (String[] ply : plies)
+		{
+			assertTrue(game.getValidMoves(ply[0]).contains(ply[1]));
+			game.getValidMoves("A2");
+			game.getValidMoves(ply[1]);
+			game.getValidMoveMask(BoardSnapshot.squareIndex("B8"));
+			assertFalse(game.isGameOver());
+
+			assertTrue(game.makeMove(ply[0], ply[1]));
+			assertEquals(++generated, game.getMoveGenerationCount());
+		}
+
+		assertTrue(game.isGameOver());
+		assertEquals("Black", game.getWinner());
+		assertTrue(game.getValidMoves("E2").isEmpty());
+		assertEquals(generated, game.getMoveGenerationCount());
+
+		// An illegal move generates nothing new
+		assertFalse(game.makeMove("E2", "E5"));
+		assertEquals(generated, game.getMoveGenerationCount());
+	}
+
+	@Test
+	public void ignoresSquaresOffTheBoard()
+	{
+		ChessGame game = new ChessGame("mask0001");
+		int e2 = BoardSnapshot.squareIndex("E2");
+		assertEquals((1L << BoardSnapshot.squareIndex("E3")) | (1L << BoardSnapshot.squareIndex("E4")), game.getValidMoveMask(e2));
+
+		assertEquals(0, game.getValidMoveMask(-1));
+		assertEquals(0, game.getValidMoveMask(64));
+		assertTrue(game.getValidMoves("E9").isEmpty());
+		assertFalse(game.isPromotionMove(e2, 64));
+		assertFalse(game.isPromotionMove(-1, e2));
+	}
+
+	@Test
+	public void detectsThreefoldRepetition()
+	{
+		ChessGame game = new ChessGame("rep00001");
+
+		// The knights go out and back twice; the start position occurs for the third time
+		shuffleKnights(game);
+		assertEquals(2, game.getRepetitionCount());
+		assertFalse(game.isGameOver());
+
+		shuffleKnights(game);
+		assertEquals(3, game.getRepetitionCount());
+		assertTrue(game.isGameOver());
+		assertEquals("Draw", game.getWinner());
+	}
+
+	@Test
+	public void detectsRepetitionAcrossReload()
+	{
+		ChessGame game = new ChessGame("rep00002");
+		game.setOpponentName("Opponent");
+		shuffleKnights(game);
+		assertTrue(game.makeMove("G1", "F3"));
+
+		// The earlier positions come back with the saved game, so the third occurrence still counts
+		ChessGame reloaded = ChessGame.fromSerialized(game.serialize());
+		assertEquals(game.getPositionHash(), reloaded.getPositionHash());
+		assertEquals(2, reloaded.getRepetitionCount());
+
+		assertTrue(reloaded.makeMove("G8", "F6"));
+		assertTrue(reloaded.makeMove("F3", "G1"));
+		assertFalse(reloaded.isGameOver());
+		assertTrue(reloaded.makeMove("F6", "G8"));
+		assertEquals(3, reloaded.getRepetitionCount());
+		assertTrue(reloaded.isGameOver());
+		assertEquals("Draw", reloaded.getWinner());
+	}
+
+	@Test
+	public void undoThenRedoRestoresTheSamePosition()
+	{
+		ChessGame game = new ChessGame("undo0001");
+		play(game, "E2", "E4", "D7", "D5", "E4", "D5", "D8", "D5");
+		String fen = game.getFen();
+		long hash = game.getPositionHash();
+		short[] history = game.getMoveHistory();
+		BoardSnapshot snapshot = game.getSnapshot();
+
+		// Back to the capture, and the queen's recapture played again
+		assertTrue(game.undoMove());
+		assertTrue(game.undoMove());
+		assertEquals(2, game.getPlyCount());
+		assertEquals(2, game.getUndoablePlies());
+		play(game, "E4", "D5", "D8", "D5");
+
+		assertEquals(fen, game.getFen());
+		assertEquals(hash, game.getPositionHash());
+		assertArrayEquals(history, game.getMoveHistory());
+		assertEquals(1, game.getRepetitionCount());
+		assertEquals(snapshot.getLastMove(), game.getSnapshot().getLastMove());
+		assertEquals(snapshot.getPlyCount(), game.getSnapshot().getPlyCount());
+	}
+
+	@Test
+	public void refusesToUndoPastUndoablePlies()
+	{
+		ChessGame game = new ChessGame("undo0002");
+		game.setOpponentName("Opponent");
+		play(game, "E2", "E4", "E7", "E5");
+
+		// A reloaded game has no unmake stack until its moves are replayed
+		ChessGame reloaded = ChessGame.fromSerialized(game.serialize());
+		assertEquals(2, reloaded.getPlyCount());
+		assertEquals(0, reloaded.getUndoablePlies());
+		assertFalse(reloaded.takeBack(1));
+		assertFalse(reloaded.undoMove());
+		assertEquals(game.getFen(), reloaded.getFen());
+
+		play(reloaded, "G1", "F3");
+		assertFalse(reloaded.takeBack(1));
+		assertEquals(3, reloaded.getPlyCount());
+		assertTrue(reloaded.undoMove());
+		assertFalse(reloaded.undoMove());
+		assertEquals(game.getFen(), reloaded.getFen());
+
+		// Moves from before the reload are unknown, and plies that weren't played fail
+		assertEquals(PackedMove.NONE, reloaded.getMove(1));
+		assertOutOfBounds(reloaded, 2);
+		assertOutOfBounds(reloaded, -1);
+	}
+
+	@Test
+	public void replaysRestoredHistoryAfterReload()
+	{
+		ChessGame game = new ChessGame("undo0003");
+		game.setOpponentName("Opponent");
+		String start = game.getFen();
+		play(game, "D2", "D4", "G8", "F6", "C2", "C4", "E7", "E6");
+
+		// Only part of the history restores the moves without making them undoable
+		ChessGame partial = ChessGame.fromSerialized(game.serialize());
+		partial.restoreHistory(game.getMoveHistory(), 3);
+		assertEquals(0, partial.getUndoablePlies());
+		assertEquals(game.getMove(2), partial.getMove(2));
+
+		// The whole history is replayed, so the reloaded game steps back to the start
+		ChessGame reloaded = ChessGame.fromSerialized(game.serialize());
+		reloaded.restoreHistory(game.getMoveHistory(), 4);
+		assertEquals(4, reloaded.getUndoablePlies());
+		assertEquals(game.getFen(), reloaded.getFen());
+		assertArrayEquals(game.getMoveHistory(), reloaded.getMoveHistory());
+
+		assertTrue(reloaded.takeBack(2));
+		assertEquals(game.getPositionHash(2), reloaded.getPositionHash());
+		assertTrue(reloaded.takeBack(0));
+		assertEquals(start, reloaded.getFen());
+		assertFalse(reloaded.undoMove());
+	}
+
+	private static void play(ChessGame game, String... squares)
+	{
+		for (int i = 0; i < squares.length; i += 2)
+		{
+			assertTrue(game.makeMove(squares[i], squares[i + 1]));
+		}
+	}
+
+	private static void assertOutOfBounds(ChessGame game, int ply)
+	{
+		try
+		{
+			game.getMove(ply);
+			fail("Expected ply " + ply + " to be out of bounds");
+		}
+		catch (IndexOutOfBoundsException expected)
+		{
+		}
+	}
+
+	private static void shuffleKnights(ChessGame game)
+	{
+		assertTrue(game.makeMove("G1", "F3"));
+		assertTrue(game.makeMove("G8", "F6"));
+		assertTrue(game.makeMove("F3", "G1"));
+		assertTrue(game.makeMove("F6", "G8"));
+	}
+}
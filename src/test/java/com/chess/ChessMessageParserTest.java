@@ -0,0 +1,296 @@
+package com.chess;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChessMessageParserTest
+{
+	// Fragments the fuzzer glues together, biased towards almost-valid messages
+	private static final String[] FRAGMENTS = {
+			"CHESS:", "CHESS", "CH", ":", "::", "JOIN", "RESIGN", "JOINED", "E2", "e4", "H8", "A1",
+			"I9", "Z", "1a2b3c4d", "abc", " ", "x", "", "0", "9", " ", "CHESS:1a2b3c4d:"
+	};
+
+	@Test
+	public void parsesLegacyMessages()
+	{
+		ChessMessage message = new ChessMessage();
+
+		assertTrue(ChessMessageParser.parse("CHESS:1a2b3c4d:E2:E4", message));
+		assertEquals(ChessMessage.MOVE, message.getType());
+		assertEquals(PackedMove.of(BoardSnapshot.squareIndex("E2"), BoardSnapshot.squareIndex("E4"), PackedMove.NO_PROMOTION),
+				message.getRecordValue(0));
+		assertFalse(message.isCompact());
+		assertTrue(message.isForGame("1a2b3c4d"));
+		assertFalse(message.isForGame("1a2b3c4e"));
+
+		assertTrue(ChessMessageParser.parse("CHESS:1a2b3c4d:JOIN", message));
+		assertEquals(ChessMessage.JOIN, message.getType());
+
+		assertTrue(ChessMessageParser.parse("CHESS:1a2b3c4d:RESIGN", message));
+		assertEquals(ChessMessage.RESIGN, message.getType());
+	}
+
+	@Test
+	public void parsesCompactBatches()
+	{
+		ChessMessage message = new ChessMessage();
+		short promotion = PackedMove.of(BoardSnapshot.squareIndex("E7"), BoardSnapshot.squareIndex("E8"), PackedMove.KNIGHT);
+
+		String line = new ChessWireFormat.Batch("1a2b3c4d")
+				.move(promotion)
+				.ack(4095)
+				.clock(90_000)
+				.drawOffer()
+				.toString();
+
+		assertTrue(ChessMessageParser.parse(line, message));
+		assertTrue(message.isCompact());
+		assertTrue(message.isForGame("1a2b3c4d"));
+		assertEquals(4, message.getRecordCount());
+		assertEquals(ChessMessage.MOVE, message.getRecordType(0));
+		assertEquals(promotion, message.getRecordValue(0));
+		assertEquals(ChessMessage.ACK, message.getRecordType(1));
+		assertEquals(4095, message.getRecordValue(1));
+		assertEquals(ChessMessage.CLOCK, message.getRecordType(2));
+		assertEquals(90_000, message.getRecordValue(2));
+		assertEquals(ChessMessage.DRAW_OFFER, message.getRecordType(3));
+
+		assertTrue(ChessMessageParser.parse(new ChessWireFormat.Batch("1a2b3c4d").resign().toString(), message));
+		assertEquals(ChessMessage.RESIGN, message.getType());
+
+		// Truncated payloads, unknown tags and empty batches are rejected
+		assertFalse(ChessMessageParser.parse(line.substring(0, line.length() - 3), message));
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:Z", message));
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:", message));
+
+		// E2E4 is accepted, but not with bits above the 16 a PackedMove has
+		short e4 = PackedMove.of(BoardSnapshot.squareIndex("E2"), BoardSnapshot.squareIndex("E4"), PackedMove.NO_PROMOTION);
+		assertTrue(ChessMessageParser.parse("CHX1:1a2b3c4d:M0CS", message));
+		assertEquals(e4, message.getRecordValue(0));
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:MGCS", message));
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:M_CS", message));
+		assertFalse(ChessMessageParser.parse("CHX2:1a2b3c4d:J", message));
+		assertEquals(0, message.getRecordCount());
+	}
+
+	@Test
+	public void parsesSyncRecords()
+	{
+		ChessMessage message = new ChessMessage();
+		long hash = 0x9D39247E33776D41L;
+
+		String line = new ChessWireFormat.Batch("1a2b3c4d")
+				.move(PackedMove.of(12, 28, PackedMove.NO_PROMOTION))
+				.sync(4097, hash)
+				.resync(12, hash)
+				.toString();
+
+		assertTrue(ChessMessageParser.parse(line, message));
+		assertEquals(3, message.getRecordCount());
+		assertEquals(1, message.findRecord(ChessMessage.SYNC));
+		assertEquals(1, message.countRecords(ChessMessage.MOVE));
+
+		int sync = message.getRecordValue(1);
+		assertEquals(1, ChessWireFormat.syncPly(sync));
+		assertEquals(ChessWireFormat.shortHash(hash), ChessWireFormat.syncHash(sync));
+		assertEquals(4097, ChessWireFormat.unwrapPly(ChessWireFormat.syncPly(sync), 4090));
+		assertEquals(12, ChessWireFormat.syncPly(message.getRecordValue(2)));
+
+		// The position runs to the end of the line and unpacks to the FEN without its move number
+		String fen = "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0";
+		assertTrue(ChessMessageParser.parse(new ChessWireFormat.Batch("1a2b3c4d").sync(1, hash).position(fen).toString(), message));
+		assertEquals(ChessMessage.POSITION, message.getRecordType(1));
+		assertEquals(fen, message.getPosition());
+
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:S0", message));
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:F", message));
+	}
+
+	@Test
+	public void longPositionFitsInOneLine()
+	{
+		ChessMessage message = new ChessMessage();
+		long hash = 0x9E3779B97F4A7C15L;
+
+		// A 66-char middlegame FEN, more than the old format could carry after the header and sync record
+		String fen = "r1bq1rk1/pp2bppp/2n1pn2/2pp4/2PP4/2N1PN2/PPQ1BPPP/R1B2RK1 w Qq c6 15";
+		String line = new ChessWireFormat.Batch("1a2b3c4d").sync(20, hash).position(fen + " 11").toString();
+		assertTrue(line.length() <= ChessWireFormat.MAX_LINE_LENGTH);
+		assertTrue(ChessMessageParser.parse(line, message));
+		assertEquals(fen, message.getPosition());
+
+		// Every square occupied by something is the longest a position gets
+		String full = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0";
+		line = new ChessWireFormat.Batch("1a2b3c4d").sync(0, hash).position(full).toString();
+		assertTrue(line.length() <= ChessWireFormat.MAX_LINE_LENGTH);
+		assertTrue(ChessMessageParser.parse(line, message));
+		assertEquals(full, message.getPosition());
+
+		// A truncated or corrupted position doesn't unpack
+		assertTrue(ChessMessageParser.parse(line.substring(0, line.length() - 1), message));
+		assertNull(message.getPosition());
+		assertTrue(ChessMessageParser.parse(line.substring(0, 22) + "____________", message));
+		assertNull(message.getPosition());
+	}
+
+	@Test
+	public void parsesTakebackRecords()
+	{
+		ChessMessage message = new ChessMessage();
+		long hash = 0x463B96181691FC9CL;
+
+		assertTrue(ChessMessageParser.parse(new ChessWireFormat.Batch("1a2b3c4d").takeback(37, hash).toString(), message));
+		assertEquals(ChessMessage.TAKEBACK, message.getType());
+
+		int takeback = message.getRecordValue(0);
+		assertEquals(37, ChessWireFormat.syncPly(takeback));
+		assertEquals(ChessWireFormat.shortHash(hash), ChessWireFormat.syncHash(takeback));
+
+		assertFalse(ChessMessageParser.parse("CHX1:1a2b3c4d:T00", message));
+	}
+
+	@Test
+	public void fuzzCompactRoundTrip()
+	{
+		Random random = new Random(0xC0DE);
+		ChessMessage message = new ChessMessage();
+
+		for (int i = 0; i < 50_000; i++)
+		{
+			ChessWireFormat.Batch batch = new ChessWireFormat.Batch("g" + random.nextInt(1000));
+			int records = 1 + random.nextInt(ChessMessage.MAX_RECORDS);
+			short[] moves = new short[records];
+			for (int r = 0; r < records; r++)
+			{
+				int from = random.nextInt(64);
+				int to = (from + 1 + random.nextInt(63)) % 64;
+				moves[r] = PackedMove.of(from, to, random.nextInt(PackedMove.QUEEN + 1));
+				batch.move(moves[r]);
+			}
+
+			String line = batch.toString();
+			assertTrue(line, ChessMessageParser.parse(line, message));
+			assertEquals(line, records, message.getRecordCount());
+			for (int r = 0; r < records; r++)
+			{
+				assertEquals(line, moves[r], message.getRecordValue(r));
+			}
+
+			// Any single corrupted char must never crash the parser
+			char[] corrupted = line.toCharArray();
+			corrupted[random.nextInt(corrupted.length)] = (char) random.nextInt(256);
+			ChessMessageParser.parse(new String(corrupted), message);
+		}
+	}
+
+	@Test
+	public void rejectsOtherChat()
+	{
+		ChessMessage message = new ChessMessage();
+
+		assertFalse(ChessMessageParser.parse("hello there", message));
+		assertFalse(ChessMessageParser.parse("CHESS:", message));
+		assertFalse(ChessMessageParser.parse("CHESS::E2:E4", message));
+		assertFalse(ChessMessageParser.parse("CHESS:1a2b3c4d:E2", message));
+		assertFalse(ChessMessageParser.parse("CHESS:1a2b3c4d:E9:E4", message));
+		assertFalse(ChessMessageParser.parse("CHESS:1a2b3c4d:JOINED", message));
+		assertEquals(ChessMessage.NONE, message.getType());
+	}
+
+	@Test
+	public void fuzzLegacyAgainstSplitBasedDecoding()
+	{
+		Random random = new Random(0x5EED);
+		ChessMessage message = new ChessMessage();
+
+		for (int i = 0; i < 200_000; i++)
+		{
+			String text = randomMessage(random);
+			if (text.startsWith(ChessWireFormat.PREFIX))
+			{
+				continue;
+			}
+
+			int expected = referenceType(text);
+
+			boolean parsed = ChessMessageParser.parse(text, message);
+			assertEquals(text, expected != ChessMessage.NONE, parsed);
+			assertEquals(text, expected, message.getType());
+
+			if (parsed)
+			{
+				String[] parts = text.substring(ChessMessageParser.PREFIX.length()).split(":", -1);
+				assertTrue(text, message.isForGame(parts[0]));
+				if (expected == ChessMessage.MOVE)
+				{
+					short move = (short) message.getRecordValue(0);
+					assertEquals(text, BoardSnapshot.squareIndex(parts[1]), PackedMove.from(move));
+					assertEquals(text, BoardSnapshot.squareIndex(parts[2]), PackedMove.to(move));
+				}
+			}
+		}
+	}
+
+	private static String randomMessage(Random random)
+	{
+		StringBuilder sb = new StringBuilder();
+		int fragments = random.nextInt(6);
+		for (int i = 0; i < fragments; i++)
+		{
+			if (random.nextInt(8) == 0)
+			{
+				sb.append((char) random.nextInt(128));
+			}
+			else
+			{
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Straightforward String-based decoding of the protocol, used as the oracle
+	 */
+	private static int referenceType(String text)
+	{
+		if (!text.startsWith(ChessMessageParser.PREFIX))
+		{
+			return ChessMessage.NONE;
+		}
+
+		String[] parts = text.substring(ChessMessageParser.PREFIX.length()).split(":", -1);
+		if (parts.length < 2 || parts[0].isEmpty())
+		{
+			return ChessMessage.NONE;
+		}
+
+		if (parts[1].equals("JOIN"))
+		{
+			return ChessMessage.JOIN;
+		}
+		if (parts[1].equals("RESIGN"))
+		{
+			return ChessMessage.RESIGN;
+		}
+		if (parts.length >= 3 && isSquare(parts[1]) && isSquare(parts[2]))
+		{
+			return ChessMessage.MOVE;
+		}
+		return ChessMessage.NONE;
+	}
+
+	private static boolean isSquare(String text)
+	{
+		return text.length() == 2
+				&& ((text.charAt(0) >= 'A' && text.charAt(0) <= 'H') || (text.charAt(0) >= 'a' && text.charAt(0) <= 'h'))
+				&& text.charAt(1) >= '1' && text.charAt(1) <= '8';
+	}
+}
@@ -0,0 +1,110 @@
+package com.chess;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GameArchiveTest
+{
+	@Test
+	public void readsBackAppendedGamesUntilClosed() throws IOException
+	{
+		Path directory = Files.createTempDirectory("archive");
+		try
+		{
+			ChessGame game = new ChessGame("arch0001");
+			game.setOpponentName("Opponent");
+			assertTrue(game.makeMove("E2", "E4"));
+
+			GameArchive archive = new GameArchive(directory);
+			archive.append(GameArchive.Record.of(game, 1000));
+			assertEquals(1, archive.size());
+
+			GameArchive.Entry entry = archive.getEntry(0);
+			assertEquals("Opponent", entry.getOpponentName());
+			assertEquals(1000, entry.getFinishedAt());
+			assertEquals(1, entry.getPlyCount());
+
+			GameArchive.Record record = archive.open(0);
+			assertEquals("arch0001", record.getGameId());
+			assertArrayEquals(game.getMoveHistory(), record.getMoves());
+
+			// Once closed, the archive isn't reopened behind the owner's back
+			archive.close();
+			assertEquals(0, archive.size());
+			try
+			{
+				archive.append(GameArchive.Record.of(game, 2000));
+				fail("Expected a closed archive to refuse appends");
+			}
+			catch (IOException expected)
+			{
+			}
+
+			// The files still hold the game for the next session
+			GameArchive reopened = new GameArchive(directory);
+			assertEquals(1, reopened.size());
+			assertEquals("arch0001", reopened.open(0).getGameId());
+			reopened.close();
+		}
+		finally
+		{
+			Files.delete(directory.resolve("archive.dat"));
+			Files.delete(directory.resolve("archive.idx"));
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void findsGamesByOpponentAndId() throws IOException
+	{
+		Path directory = Files.createTempDirectory("archive");
+		GameArchive archive = new GameArchive(directory);
+		try
+		{
+			archive.append(GameArchive.Record.of(game("find0001", "Some Player"), 1000));
+			archive.append(GameArchive.Record.of(game("find0002", "Someone Else"), 2000));
+			archive.append(GameArchive.Record.of(game("find0001", "some player"), 3000));
+
+			// Names match the way the registry compares them, oldest first
+			assertArrayEquals(new int[]{0, 2}, archive.findByOpponent(" SOME PLAYER"));
+			assertArrayEquals(new int[]{1}, archive.findByOpponent("someone else"));
+			assertArrayEquals(new int[0], archive.findByOpponent("nobody"));
+
+			// A reused ID finds the latest game
+			assertEquals(2, archive.findByGameId("find0001"));
+			assertEquals(1, archive.findByGameId("find0002"));
+			assertEquals(-1, archive.findByGameId("find0003"));
+
+			// Colliding String hashes are told apart by the stored ID and name
+			assertEquals("aa".hashCode(), "bB".hashCode());
+			assertEquals("a^".hashCode(), "b?".hashCode());
+			archive.append(GameArchive.Record.of(game("aa", "a^"), 4000));
+			assertEquals(-1, archive.findByGameId("bB"));
+			assertEquals(3, archive.findByGameId("aa"));
+			assertArrayEquals(new int[0], archive.findByOpponent("b?"));
+			assertArrayEquals(new int[]{3}, archive.findByOpponent("a^"));
+		}
+		finally
+		{
+			archive.close();
+			Files.delete(directory.resolve("archive.dat"));
+			Files.delete(directory.resolve("archive.idx"));
+			Files.delete(directory);
+		}
+	}
+
+	private static ChessGame game(String gameId, String opponentName)
+	{
+		ChessGame game = new ChessGame(gameId);
+		game.setOpponentName(opponentName);
+		return game;
+	}
+}
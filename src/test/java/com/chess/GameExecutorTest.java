@@ -0,0 +1,52 @@
+package com.chess;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameExecutorTest
+{
+	@Test
+	public void removedGameRunsQueuedCommandsAndRefusesLaterOnes() throws InterruptedException
+	{
+		GameExecutor executor = new GameExecutor((game, previous) -> { });
+		ChessGame game = new ChessGame("exec0001");
+		List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch release = new CountDownLatch(1);
+
+		// Commands for a game that was never added are refused
+		assertFalse(executor.submit(game, target -> ran.add(0)));
+
+		executor.add(game);
+		assertTrue(executor.submit(game, target -> awaitQuietly(release)));
+		assertTrue(executor.submit(game, target -> ran.add(1)));
+		executor.remove(game);
+
+		// A later submit doesn't open a second mailbox
+		assertFalse(executor.submit(game, target -> ran.add(2)));
+
+		release.countDown();
+		assertTrue(executor.shutDown());
+		assertEquals(Collections.singletonList(1), ran);
+	}
+
+	private static void awaitQuietly(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
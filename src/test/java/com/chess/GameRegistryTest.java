@@ -0,0 +1,43 @@
+package com.chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GameRegistryTest
+{
+	@Test
+	public void tracksOpponentsAcrossReplaceAndRemove()
+	{
+		GameRegistry registry = new GameRegistry();
+		ChessGame first = game("reg00001", "Some Player");
+		assertNull(registry.add(first));
+
+		// Names match the way chat shows them
+		assertTrue(registry.hasOpponent("some player"));
+		assertTrue(registry.hasOpponent(" SOME PLAYER "));
+		assertFalse(registry.hasOpponent("someone else"));
+
+		// A game with the same ID replaces the first, and its opponent with it
+		ChessGame second = game("reg00001", "Someone Else");
+		assertSame(first, registry.add(second));
+		assertFalse(registry.hasOpponent("some player"));
+		assertTrue(registry.hasOpponent("someone else"));
+		assertEquals(1, registry.getGames().size());
+
+		assertSame(second, registry.remove("reg00001"));
+		assertFalse(registry.hasOpponent("someone else"));
+		assertTrue(registry.isEmpty());
+	}
+
+	private static ChessGame game(String gameId, String opponentName)
+	{
+		ChessGame game = new ChessGame(gameId);
+		game.setOpponentName(opponentName);
+		return game;
+	}
+}
@@ -0,0 +1,104 @@
+package com.chess;
+
+import com.github.bhlangonijr.chesslib.Board;
+import com.github.bhlangonijr.chesslib.Square;
+import com.github.bhlangonijr.chesslib.move.Move;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpeningBookTest
+{
+	private static final long START_KEY = 0x463b96181691fc9cL;
+
+	@Test
+	public void startPositionHasPublishedKey()
+	{
+		assertEquals(START_KEY, OpeningBook.polyglotKey(new Board()));
+	}
+
+	@Test
+	public void keysMatchPublishedValues()
+	{
+		// Test positions from the Polyglot book format description, reached move by move
+		assertEquals(0x823c9b50fd114196L, keyAfter("E2E4"));
+		assertEquals(0x0756b94461c50fb0L, keyAfter("E2E4", "D7D5"));
+		assertEquals(0x662fafb965db29d4L, keyAfter("E2E4", "D7D5", "E4E5"));
+		assertEquals(0x22a48b5a8e47ff78L, keyAfter("E2E4", "D7D5", "E4E5", "F7F5"));
+		assertEquals(0x652a607ca3f242c1L, keyAfter("E2E4", "D7D5", "E4E5", "F7F5", "E1E2"));
+		assertEquals(0x00fdd303c946bdd9L, keyAfter("E2E4", "D7D5", "E4E5", "F7F5", "E1E2", "E8F7"));
+		assertEquals(0x3c8123ea7b067637L, keyAfter("A2A4", "B7B5", "H2H4", "B5B4", "C2C4"));
+		assertEquals(0x5c3f9b829b279560L, keyAfter("A2A4", "B7B5", "H2H4", "B5B4", "C2C4", "B4C3", "A1A3"));
+	}
+
+	@Test
+	public void probeKeepsLegalMovesHighestWeightFirst() throws IOException
+	{
+		short e4 = move("E2", "E4");
+		short d4 = move("D2", "D4");
+		short illegal = move("E2", "E5");
+		short unplayed = move("G1", "F3");
+
+		Path file = Files.createTempFile("book", ".bin");
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file)))
+			{
+				writeEntry(out, START_KEY, e4, 10);
+				writeEntry(out, START_KEY, d4, 30);
+				writeEntry(out, START_KEY, illegal, 50);
+				writeEntry(out, START_KEY, unplayed, 0);
+			}
+
+			ChessGame game = new ChessGame("book0001");
+			try (OpeningBook book = OpeningBook.open(file))
+			{
+				assertEquals(4, book.size());
+
+				List<OpeningBook.BookMove> moves = game.getBookMoves(book);
+				assertEquals(2, moves.size());
+				assertEquals(d4, moves.get(0).getMove());
+				assertEquals(30, moves.get(0).getWeight());
+				assertEquals(e4, moves.get(1).getMove());
+
+				// A lookup on a closed book finds nothing rather than failing
+				book.close();
+				assertTrue(game.getBookMoves(book).isEmpty());
+			}
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+
+	private static long keyAfter(String... moves)
+	{
+		Board board = new Board();
+		for (String move : moves)
+		{
+			board.doMove(new Move(Square.valueOf(move.substring(0, 2)), Square.valueOf(move.substring(2, 4))));
+		}
+		return OpeningBook.polyglotKey(board);
+	}
+
+	private static short move(String from, String to)
+	{
+		return PackedMove.of(BoardSnapshot.squareIndex(from), BoardSnapshot.squareIndex(to), PackedMove.NO_PROMOTION);
+	}
+
+	private static void writeEntry(DataOutputStream out, long key, short move, int weight) throws IOException
+	{
+		out.writeLong(key);
+		out.writeShort(move);
+		out.writeShort(weight);
+		out.writeInt(0);
+	}
+}
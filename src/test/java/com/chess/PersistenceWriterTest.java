@@ -0,0 +1,58 @@
+package com.chess;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersistenceWriterTest
+{
+	@Test
+	public void keepsMovesSavedAfterAHistoryRewrite() throws IOException
+	{
+		Path directory = Files.createTempDirectory("journal");
+		try
+		{
+			GameJournal journal = new GameJournal(directory);
+
+			// Snapshots go to the config, which this test does without; the journal is what is checked
+			PersistenceWriter writer = new PersistenceWriter(null, journal, new GameArchive(directory));
+
+			ChessGame game = new ChessGame("pers0001");
+			game.setOpponentName("Opponent");
+			assertTrue(game.makeMove("E2", "E4"));
+			assertTrue(game.makeMove("E7", "E5"));
+			assertTrue(game.makeMove("G1", "F3"));
+
+			// A takeback rewrites the journal, and the next move lands in the same flush window
+			assertTrue(game.takeBack(2));
+			writer.replaceGame(game);
+			String snapshot = game.serialize();
+			assertTrue(game.makeMove("D2", "D4"));
+			writer.saveMove(game);
+			writer.shutDown();
+
+			assertArrayEquals(game.getMoveHistory(), journal.read("pers0001"));
+
+			// The config still holds the snapshot from before the move; the journal brings the game up to date
+			ChessGame recovered = ChessGame.fromSerialized(snapshot);
+			journal.recover(recovered);
+			assertEquals(3, recovered.getPlyCount());
+			assertEquals(game.getFen(), recovered.getFen());
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.chess;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PositionHistoryTest
+{
+	@Test
+	public void countsOccurrencesAcrossGrowthAndPops()
+	{
+		PositionHistory history = new PositionHistory();
+
+		// Enough distinct hashes to grow both the hash list and the count table, with every
+		// tenth position repeated once
+		for (int i = 1; i <= 200; i++)
+		{
+			assertEquals(1, history.push(hash(i)));
+			if (i % 10 == 0)
+			{
+				assertEquals(2, history.push(hash(i)));
+			}
+		}
+		assertEquals(220, history.size());
+		assertEquals(2, history.occurrences(hash(100)));
+		assertEquals(1, history.occurrences(hash(101)));
+
+		// Taking plies back lowers the counts without breaking the probe chains of the rest
+		for (int i = 0; i < 110; i++)
+		{
+			history.pop();
+		}
+		assertEquals(110, history.size());
+		assertEquals(hash(100), history.current());
+		assertEquals(2, history.occurrences(hash(100)));
+		assertEquals(0, history.occurrences(hash(101)));
+		assertEquals(0, history.occurrences(hash(200)));
+		for (int i = 1; i <= 100; i++)
+		{
+			assertEquals(i % 10 == 0 ? 2 : 1, history.occurrences(hash(i)));
+		}
+
+		assertEquals(1, history.push(hash(150)));
+		assertEquals(3, history.push(hash(100)));
+	}
+
+	@Test
+	public void restoresAndEncodesSavedHashes()
+	{
+		PositionHistory history = new PositionHistory();
+		for (int i = 1; i <= 100; i++)
+		{
+			history.push(hash(i % 7 + 1));
+		}
+		long[] saved = history.toArray();
+
+		long[] decoded = PositionHistory.decode(history.encode());
+		assertArrayEquals(saved, decoded);
+
+		// A restore replaces whatever the history held, counts included
+		PositionHistory restored = new PositionHistory();
+		restored.push(hash(1));
+		restored.push(hash(99));
+		restored.restore(decoded);
+		assertEquals(100, restored.size());
+		assertEquals(history.current(), restored.current());
+		assertEquals(0, restored.occurrences(hash(99)));
+		for (int i = 1; i <= 7; i++)
+		{
+			assertEquals(history.occurrences(hash(i)), restored.occurrences(hash(i)));
+		}
+
+		// Positions from before the history was recorded are kept but never counted
+		restored.restore(new long[]{PositionHistory.UNKNOWN, hash(1), PositionHistory.UNKNOWN});
+		assertEquals(3, restored.size());
+		assertEquals(0, restored.occurrences(PositionHistory.UNKNOWN));
+		assertEquals(1, restored.occurrences(hash(1)));
+		assertArrayEquals(new long[0], PositionHistory.decode(new PositionHistory().encode()));
+	}
+
+	// Spreads small numbers over the table the way Zobrist keys would be
+	private static long hash(int i)
+	{
+		return i * 0x9E3779B97F4A7C15L;
+	}
+}